@@ -0,0 +1,39 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Creates and removes the temporary directories used by the benchmarks.
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() { }
+
+    static Path createTempDirectory(final String prefix) throws IOException {
+        return Files.createTempDirectory("benchmark-" + prefix);
+    }
+
+    static void delete(final Path... paths) throws IOException {
+        IOUtils.rm(paths);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import se.dykstrom.lucene.model.Book;
+
+/**
+ * Generates a synthetic corpus of books. The same seed and size always generate the same books,
+ * so benchmark runs can be compared with each other.
+ */
+public final class BookCorpus {
+
+    /**
+     * Predefined corpus sizes.
+     */
+    public enum Size {
+        SMALL(1_000),
+        MEDIUM(10_000),
+        LARGE(100_000);
+
+        private final int books;
+
+        Size(final int books) {
+            this.books = books;
+        }
+
+        public int books() {
+            return books;
+        }
+    }
+
+    public static final long DEFAULT_SEED = 42L;
+
+    static final String[] FIRST_NAMES = {
+            "Astrid", "Ernest", "Selma", "August", "Karin", "Vilhelm", "Kerstin", "Hjalmar", "Moa", "Pär",
+            "Tove", "Harry", "Sara", "Jan", "Maria", "Stieg", "Henning", "Camilla", "Jonas", "Lena"
+    };
+
+    static final String[] LAST_NAMES = {
+            "Lindgren", "Hemingway", "Lagerlöf", "Strindberg", "Boye", "Moberg", "Ekman", "Söderberg", "Martinson",
+            "Lagerkvist", "Jansson", "Kallifatides", "Stridsberg", "Guillou", "Lang", "Larsson", "Mankell",
+            "Läckberg", "Gardell", "Andersson", "Tolkien", "Ajvide", "Enquist", "Tunström", "Jersild"
+    };
+
+    static final String[] WORDS = {
+            "havet", "den", "gamle", "och", "ringen", "skogen", "natten", "staden", "vägen", "huset", "kriget",
+            "kärleken", "resan", "döden", "sommaren", "vintern", "barnen", "systrarna", "bröderna", "fiskaren",
+            "kungen", "drottningen", "berget", "sjön", "ön", "landet", "hemligheten", "minnet", "tiden", "ljuset",
+            "mörkret", "stormen", "elden", "vattnet", "himlen", "stjärnorna", "vännerna", "fienden", "brevet",
+            "boken", "historien", "sanningen", "lögnen", "drömmen", "hoppet", "sorgen", "glädjen", "livet",
+            "en", "ett", "av", "på", "i", "med", "till", "från", "om", "under", "över", "mellan", "efter"
+    };
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private BookCorpus() { }
+
+    /**
+     * Generates the given number of books, using the given seed.
+     */
+    public static List<Book> generate(final int books, final long seed) {
+        final var random = new SplittableRandom(seed);
+        final List<Book> result = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            result.add(generateBook(random, i));
+        }
+        return result;
+    }
+
+    public static List<Book> generate(final Size size) {
+        return generate(size.books(), DEFAULT_SEED);
+    }
+
+    /**
+     * Generates the given number of books, using the given seed, and writes them to one newline-delimited
+     * JSON file as they are generated. This writes the same books as {@link #generate(int, long)},
+     * without keeping them all in memory, so it works for corpora of millions of books.
+     */
+    public static void writeNdjsonFile(final int books, final long seed, final Path ndjsonFile) throws IOException {
+        final var random = new SplittableRandom(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(ndjsonFile)) {
+            for (int i = 0; i < books; i++) {
+                writer.write(OBJECT_MAPPER.writeValueAsString(generateBook(random, i)));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns the ISBN of the book with the given index in a generated corpus.
+     */
+    public static String isbn(final int index) {
+        return String.format("978-%010d", index);
+    }
+
+    /**
+     * Returns the first names that the authors of generated books can have.
+     */
+    public static List<String> firstNames() {
+        return List.of(FIRST_NAMES);
+    }
+
+    /**
+     * Returns the last names that the authors of generated books can have.
+     */
+    public static List<String> lastNames() {
+        return List.of(LAST_NAMES);
+    }
+
+    /**
+     * Returns the words that the titles and descriptions of generated books are made of.
+     */
+    public static List<String> words() {
+        return List.of(WORDS);
+    }
+
+    /**
+     * Writes each book to its own JSON file in the given directory, and returns the paths of the files.
+     */
+    public static List<Path> writeBookFiles(final List<Book> books, final Path bookDir) throws IOException {
+        Files.createDirectories(bookDir);
+        final List<Path> paths = new ArrayList<>(books.size());
+        for (final Book book : books) {
+            final var path = bookDir.resolve(book.isbn() + ".json");
+            OBJECT_MAPPER.writeValue(path.toFile(), book);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Writes all books to one newline-delimited JSON file.
+     */
+    public static void writeNdjsonFile(final List<Book> books, final Path ndjsonFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(ndjsonFile)) {
+            for (final Book book : books) {
+                writer.write(OBJECT_MAPPER.writeValueAsString(book));
+                writer.newLine();
+            }
+        }
+    }
+
+    static Book generateBook(final SplittableRandom random, final int index) {
+        final String isbn = isbn(index);
+        final String author = pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES);
+        final String title = capitalize(words(random, 1 + random.nextInt(4)));
+        final int pages = 50 + random.nextInt(951);
+        final var description = new StringBuilder();
+        final int sentences = 2 + random.nextInt(6);
+        for (int i = 0; i < sentences; i++) {
+            description.append(capitalize(words(random, 5 + random.nextInt(15)))).append(". ");
+        }
+        return new Book(isbn, title, author, pages, description.toString().strip());
+    }
+
+    private static String words(final SplittableRandom random, final int count) {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(pick(random, WORDS));
+        }
+        return builder.toString();
+    }
+
+    private static String pick(final SplittableRandom random, final String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String capitalize(final String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+}
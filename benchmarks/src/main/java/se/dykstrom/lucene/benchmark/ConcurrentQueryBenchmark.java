@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+import se.dykstrom.lucene.service.AsyncQueryService;
+import se.dykstrom.lucene.service.AsyncQueryServiceImpl;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexConfig;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.QueryConfig;
+import se.dykstrom.lucene.service.QueryService;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+
+/**
+ * Compares the blocking and the async query service, with and without parallel search of index slices.
+ * The result cache is disabled, so that every query searches the index.
+ * <p>
+ * The blocking benchmarks measure one caller, and {@value #CONCURRENT_QUERIES} concurrent callers.
+ * The async benchmark starts {@value #CONCURRENT_QUERIES} queries from one caller, and waits for all of them.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ConcurrentQueryBenchmark {
+
+    private static final int CONCURRENT_QUERIES = 16;
+
+    private static final PageRequest REQUEST = PageRequest.first(20, BookSort.descending(BookSort.Key.PAGES));
+
+    @Param({"LARGE"})
+    BookCorpus.Size size;
+
+    @Param({"1", "4"})
+    int searchThreads;
+
+    private Path bookDir;
+    private Path indexPath;
+    private QueryService queryService;
+    private AsyncQueryService asyncQueryService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bookDir = BenchmarkFiles.createTempDirectory("books");
+        indexPath = BenchmarkFiles.createTempDirectory("index");
+        BookCorpus.writeBookFiles(BookCorpus.generate(size), bookDir);
+        // A small RAM buffer gives an index with many segments, and thus several slices to search in parallel
+        final var indexConfig = IndexConfig.DEFAULT.withRamBufferSizeMb(2.0);
+        try (IndexService indexService = new IndexServiceImpl(indexPath, new FileServiceImpl(), indexConfig)) {
+            indexService.indexAllBooks(bookDir);
+        }
+        final var queryConfig = QueryConfig.DEFAULT.withCacheSize(0).withSearchThreads(searchThreads);
+        queryService = new QueryServiceImpl(indexPath, new FileServiceImpl(), queryConfig);
+        asyncQueryService = new AsyncQueryServiceImpl(
+                new QueryServiceImpl(indexPath, new FileServiceImpl(), queryConfig), CONCURRENT_QUERIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        queryService.close();
+        asyncQueryService.close();
+        BenchmarkFiles.delete(bookDir, indexPath);
+    }
+
+    @Benchmark
+    public ReferencePage blocking() throws IOException {
+        return queryService.findReferencesByQuery("description:havet", REQUEST);
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_QUERIES)
+    public ReferencePage blockingConcurrent() throws IOException {
+        return queryService.findReferencesByQuery("description:havet", REQUEST);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_QUERIES)
+    public Object async() {
+        final var futures = new CompletableFuture<?>[CONCURRENT_QUERIES];
+        for (int i = 0; i < CONCURRENT_QUERIES; i++) {
+            futures[i] = asyncQueryService.findReferencesByQuery("description:havet", REQUEST);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+import se.dykstrom.lucene.service.DirectoryType;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.QueryConfig;
+import se.dykstrom.lucene.service.QueryService;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+
+/**
+ * Compares query latency when the index files are accessed through different directory types.
+ * The index is written with the default directory type, and the result cache is disabled.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DirectoryBenchmark {
+
+    @Param({"MEDIUM"})
+    BookCorpus.Size size;
+
+    @Param({"MMAP", "NIO", "PRELOAD"})
+    DirectoryType directoryType;
+
+    private Path bookDir;
+    private Path indexPath;
+    private QueryService queryService;
+    private String isbn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bookDir = BenchmarkFiles.createTempDirectory("books");
+        indexPath = BenchmarkFiles.createTempDirectory("index");
+        final List<Book> books = BookCorpus.generate(size);
+        BookCorpus.writeBookFiles(books, bookDir);
+        try (IndexService indexService = new IndexServiceImpl(indexPath)) {
+            indexService.indexAllBooks(bookDir);
+        }
+        final var config = QueryConfig.DEFAULT.withCacheSize(0).withDirectoryType(directoryType);
+        queryService = new QueryServiceImpl(indexPath, new FileServiceImpl(), config);
+        isbn = books.get(books.size() / 2).isbn();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        queryService.close();
+        BenchmarkFiles.delete(bookDir, indexPath);
+    }
+
+    @Benchmark
+    public Optional<Book> findBookByIsbn() throws IOException {
+        return queryService.findBookByIsbn(isbn);
+    }
+
+    @Benchmark
+    public ReferencePage findReferencesByQueryFirstPage() throws IOException {
+        return queryService.findReferencesByQuery("description:hoppet", PageRequest.first(20));
+    }
+
+    @Benchmark
+    public ReferencePage findReferencesByQuerySortedByPages() throws IOException {
+        final var request = PageRequest.first(20, BookSort.descending(BookSort.Key.PAGES));
+        return queryService.findReferencesByQuery("description:hoppet", request);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.service.FileService;
+import se.dykstrom.lucene.service.FileServiceImpl;
+
+/**
+ * Benchmarks for {@link FileServiceImpl}.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FileBenchmark {
+
+    @Param({"SMALL", "MEDIUM"})
+    BookCorpus.Size size;
+
+    private final FileService fileService = new FileServiceImpl();
+
+    private Path bookDir;
+    private Path ndjsonFile;
+    private List<BookReference> references;
+    private Path bookFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bookDir = BenchmarkFiles.createTempDirectory("books");
+        final List<Book> books = BookCorpus.generate(size);
+        final List<Path> paths = BookCorpus.writeBookFiles(books, bookDir);
+        ndjsonFile = bookDir.resolve("books.ndjson");
+        BookCorpus.writeNdjsonFile(books, ndjsonFile);
+
+        references = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            final Book book = books.get(i);
+            references.add(new BookReference(book.isbn(), book.author(), book.title(), paths.get(i), 1.0f));
+        }
+        bookFile = paths.get(paths.size() / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(bookDir);
+    }
+
+    @Benchmark
+    public Book readBook() throws IOException {
+        return fileService.readBook(bookFile);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Book> readAllBooks() throws IOException {
+        return fileService.readAllBooks(references);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long streamBooks() throws IOException {
+        try (Stream<Book> books = fileService.streamBooks(ndjsonFile)) {
+            return books.count();
+        }
+    }
+}
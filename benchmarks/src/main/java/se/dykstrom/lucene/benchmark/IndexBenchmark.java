@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.dykstrom.lucene.service.Durability;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.IndexStats;
+
+/**
+ * Benchmarks for {@link IndexServiceImpl}.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class IndexBenchmark {
+
+    /**
+     * Rebuilds the whole index from a directory of book files.
+     */
+    @State(Scope.Benchmark)
+    public static class BulkState {
+
+        @Param({"SMALL", "MEDIUM"})
+        BookCorpus.Size size;
+
+        Path bookDir;
+        Path indexPath;
+        IndexService indexService;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            bookDir = BenchmarkFiles.createTempDirectory("books");
+            indexPath = BenchmarkFiles.createTempDirectory("index");
+            BookCorpus.writeBookFiles(BookCorpus.generate(size), bookDir);
+            indexService = new IndexServiceImpl(indexPath);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            indexService.close();
+            BenchmarkFiles.delete(bookDir, indexPath);
+        }
+    }
+
+    /**
+     * Updates single books in an existing index.
+     */
+    @State(Scope.Benchmark)
+    public static class SingleState {
+
+        @Param({"SYNC", "ASYNC"})
+        Durability durability;
+
+        Path bookDir;
+        Path indexPath;
+        List<Path> bookFiles;
+        IndexService indexService;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            bookDir = BenchmarkFiles.createTempDirectory("books");
+            indexPath = BenchmarkFiles.createTempDirectory("index");
+            bookFiles = BookCorpus.writeBookFiles(BookCorpus.generate(BookCorpus.Size.SMALL), bookDir);
+            indexService = new IndexServiceImpl(indexPath);
+            indexService.indexAllBooks(bookDir);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            indexService.close();
+            BenchmarkFiles.delete(bookDir, indexPath);
+        }
+
+        synchronized Path nextBookFile() {
+            next = (next + 1) % bookFiles.size();
+            return bookFiles.get(next);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5, batchSize = 1)
+    public IndexStats indexAllBooks(final BulkState state) throws IOException {
+        return state.indexService.indexAllBooks(state.bookDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void indexBook(final SingleState state) throws IOException {
+        state.indexService.indexBook(state.nextBookFile(), state.durability);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.SuggestService;
+import se.dykstrom.lucene.service.SuggestServiceImpl;
+
+/**
+ * Benchmarks for {@link SuggestServiceImpl}.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SuggestBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    BookCorpus.Size size;
+
+    private Path bookDir;
+    private Path indexPath;
+    private SuggestService suggestService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bookDir = BenchmarkFiles.createTempDirectory("books");
+        indexPath = BenchmarkFiles.createTempDirectory("index");
+        BookCorpus.writeBookFiles(BookCorpus.generate(size), bookDir);
+        try (IndexService indexService = new IndexServiceImpl(indexPath)) {
+            indexService.indexAllBooks(bookDir);
+        }
+        suggestService = new SuggestServiceImpl(indexPath);
+        suggestService.refresh();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        suggestService.close();
+        BenchmarkFiles.delete(bookDir, indexPath);
+    }
+
+    @Benchmark
+    public List<String> suggestAuthors() throws IOException {
+        return suggestService.suggestAuthors("lag", 10);
+    }
+
+    @Benchmark
+    public List<String> suggestTitles() throws IOException {
+        return suggestService.suggestTitles("havet och n", 10);
+    }
+}
@@ -28,15 +28,25 @@ import javafx.stage.Stage;
  */
 public class App extends Application {
 
+    private MainController controller;
+
     @Override
     public void start(final Stage stage) throws IOException {
         final var loader = new FXMLLoader(App.class.getResource("main.fxml"));
         final var scene = new Scene(loader.load(), 800, 600);
+        controller = loader.getController();
         stage.setScene(scene);
         stage.setTitle("Lucene Book Search");
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.close();
+        }
+    }
+
     public static void main(String[] args) {
         launch();
     }
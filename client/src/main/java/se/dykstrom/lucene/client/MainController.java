@@ -16,19 +16,27 @@
 
 package se.dykstrom.lucene.client;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
-import javafx.collections.ObservableList;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.DialogPane;
+import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Spinner;
 import javafx.scene.control.TableColumn;
@@ -36,16 +44,32 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.util.Duration;
 import se.dykstrom.lucene.client.task.IndexTask;
 import se.dykstrom.lucene.client.task.QueryForBookTask;
 import se.dykstrom.lucene.client.task.QueryForListTask;
+import se.dykstrom.lucene.client.util.AutoCompletion;
 import se.dykstrom.lucene.client.util.MoreBindings;
+import se.dykstrom.lucene.client.util.PagedReferenceList;
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.model.BookReference;
-import se.dykstrom.lucene.service.FileService;
+import se.dykstrom.lucene.model.BookSort;
 import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexWarmer;
+import se.dykstrom.lucene.service.JmxMetrics;
+import se.dykstrom.lucene.service.QueryConfig;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+import se.dykstrom.lucene.service.SuggestService;
+import se.dykstrom.lucene.service.SuggestServiceImpl;
+import se.dykstrom.lucene.service.WarmUpConfig;
 
 import static javafx.beans.binding.Bindings.notEqual;
+import static se.dykstrom.lucene.client.util.AppConfig.INDEX_PATH;
+import static se.dykstrom.lucene.client.util.AppConfig.INDEX_SHARDS;
+import static se.dykstrom.lucene.client.util.AppConfig.PROFILE_SAMPLE_RATE;
+import static se.dykstrom.lucene.client.util.AppConfig.SEARCH_DEBOUNCE;
+import static se.dykstrom.lucene.client.util.AppConfig.SLOW_QUERY_THRESHOLD;
+import static se.dykstrom.lucene.client.util.AppConfig.WARM_UP_QUERY_LOG;
 import static se.dykstrom.lucene.client.util.MoreBindings.isNotBlank;
 
 /**
@@ -53,19 +77,51 @@ import static se.dykstrom.lucene.client.util.MoreBindings.isNotBlank;
  */
 public class MainController {
 
-    private static final FileService FILE_SERVICE = new FileServiceImpl();
+    private static final String WARMING_UP = "Warming up...";
+
+    private final QueryServiceImpl queryService = new QueryServiceImpl(INDEX_PATH, new FileServiceImpl(),
+            QueryConfig.DEFAULT
+                    .withSlowQueryThreshold(SLOW_QUERY_THRESHOLD)
+                    .withProfileSampleRate(PROFILE_SAMPLE_RATE)
+                    .withShards(INDEX_SHARDS));
+    private final Closeable queryMetrics = JmxMetrics.register("client", queryService);
+    private final SuggestService suggestService = new SuggestServiceImpl(INDEX_PATH,
+            QueryConfig.DEFAULT.withShards(INDEX_SHARDS));
+
+    private final ExecutorService suggestExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "suggester");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService pageExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "pager");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final Service<Void> indexService = new Service<>() {
         @Override
         protected Task<Void> createTask() {
-            return new IndexTask();
+            return new IndexTask(queryService);
         }
     };
 
-    private final Service<ObservableList<BookReference>> queryForListService = new Service<>() {
+    private final Map<TableColumn<BookReference, ?>, BookSort.Key> sortKeys = new HashMap<>();
+
+    private PagedReferenceList references;
+    private BookSort sort = BookSort.RELEVANCE;
+
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(SEARCH_DEBOUNCE.toMillis()));
+
+    private final Service<PagedReferenceList> queryForListService = new Service<>() {
         @Override
-        protected Task<ObservableList<BookReference>> createTask() {
+        protected Task<PagedReferenceList> createTask() {
+            clearReferences();
             return new QueryForListTask(
+                    queryService,
+                    pageExecutor,
+                    sort,
                     authorField.getText(),
                     titleField.getText(),
                     descriptionField.getText(),
@@ -78,7 +134,7 @@ public class MainController {
     private final Service<Book> queryForBookService = new Service<>() {
         @Override
         protected Task<Book> createTask() {
-            return new QueryForBookTask(isbnField.getText());
+            return new QueryForBookTask(queryService, isbnField.getText());
         }
     };
 
@@ -89,6 +145,7 @@ public class MainController {
     @FXML private Spinner<Integer> minPagesSpinner;
     @FXML private Spinner<Integer> maxPagesSpinner;
     @FXML private TableView<BookReference> table;
+    @FXML private Label hitsLabel;
     @FXML private ProgressBar progressBar;
 
     @FXML
@@ -96,6 +153,7 @@ public class MainController {
         initializeFields();
         initializeTable();
         initializeServices();
+        startWarmUp();
     }
 
     private void initializeFields() {
@@ -111,31 +169,95 @@ public class MainController {
                 notEqual(0, minPagesSpinner.valueProperty()),
                 notEqual(0, maxPagesSpinner.valueProperty())
         ));
+        AutoCompletion.install(authorField, suggestService::suggestAuthors, suggestExecutor);
+        AutoCompletion.install(titleField, suggestService::suggestTitles, suggestExecutor);
+
+        if (!SEARCH_DEBOUNCE.isZero()) {
+            searchDebounce.setOnFinished(event -> handleIncrementalSearchAction());
+            List.<ObservableValue<?>>of(
+                    authorField.textProperty(),
+                    titleField.textProperty(),
+                    descriptionField.textProperty(),
+                    minPagesSpinner.valueProperty(),
+                    maxPagesSpinner.valueProperty()
+            ).forEach(property -> property.addListener((observable, oldValue, newValue) -> handleInputChanged()));
+        }
     }
 
     private void initializeTable() {
         final var columns = table.getColumns();
-        initializeColumn(columns, 0, BookReference::author);
-        initializeColumn(columns, 1, BookReference::title);
-        initializeColumn(columns, 2, reference -> Float.toString(reference.score()));
+        initializeColumn(columns, 0, BookSort.Key.AUTHOR, BookReference::author);
+        initializeColumn(columns, 1, BookSort.Key.TITLE, BookReference::title);
+        initializeColumn(columns, 2, BookSort.Key.RELEVANCE, reference -> Float.toString(reference.score()));
 
-        table.itemsProperty().bind(queryForListService.valueProperty());
+        table.setSortPolicy(this::sortTable);
         table.setOnMouseClicked(event -> {
             if (event.getClickCount() > 1) {
                 final var reference = table.getSelectionModel().getSelectedItem();
-                Platform.runLater(() -> showDetails(reference));
+                // The reference is null if its page has not been loaded yet
+                if (reference != null) {
+                    Platform.runLater(() -> showDetails(reference));
+                }
             }
         });
     }
 
     private void initializeColumn(final List<TableColumn<BookReference, ?>> columns,
                                   final int columnIndex,
+                                  final BookSort.Key sortKey,
                                   final Function<BookReference, String> extractor) {
         final var column = (TableColumn<BookReference, String>) columns.get(columnIndex);
-        column.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(extractor.apply(param.getValue())));
+        column.setCellValueFactory(param -> param.getValue() != null
+                ? new ReadOnlyObjectWrapper<>(extractor.apply(param.getValue()))
+                : new ReadOnlyObjectWrapper<>(""));
+        sortKeys.put(column, sortKey);
+    }
+
+    /**
+     * Sorts the table by searching again, in the order of the sort column. The references are loaded
+     * page by page when they are needed, so only the query service can sort all of them.
+     */
+    private boolean sortTable(final TableView<BookReference> tableView) {
+        final var sortOrder = tableView.getSortOrder();
+        BookSort newSort = BookSort.RELEVANCE;
+        if (!sortOrder.isEmpty()) {
+            final var column = sortOrder.get(0);
+            final var key = sortKeys.get(column);
+            newSort = column.getSortType() == TableColumn.SortType.ASCENDING
+                    ? BookSort.ascending(key)
+                    : BookSort.descending(key);
+        }
+        if (!newSort.equals(sort)) {
+            sort = newSort;
+            if (references != null || queryForListService.isRunning()) {
+                startService(queryForListService);
+            }
+        }
+        return true;
+    }
+
+    private void showReferences(final PagedReferenceList newReferences) {
+        clearReferences();
+        references = newReferences;
+        table.setItems(references);
+        hitsLabel.setText(references.totalHits() == 1 ? "1 hit" : references.totalHits() + " hits");
+    }
+
+    private void clearReferences() {
+        if (references != null) {
+            references.close();
+            references = null;
+        }
+        table.setItems(FXCollections.observableArrayList());
+        hitsLabel.setText("");
     }
 
     private void initializeServices() {
+        queryForListService.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null) {
+                showReferences(newValue);
+            }
+        });
         queryForBookService.valueProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
                 Platform.runLater(() -> showDetails(newValue));
@@ -143,9 +265,26 @@ public class MainController {
         });
     }
 
+    /**
+     * Warms up the index in the background. The user can search while the index is warming up,
+     * but the first searches may be slow.
+     */
+    private void startWarmUp() {
+        hitsLabel.setText(WARMING_UP);
+        final var config = WarmUpConfig.DEFAULT.withQueryLog(WARM_UP_QUERY_LOG);
+        new IndexWarmer(INDEX_PATH, queryService, config).start().whenComplete((stats, exception) ->
+                Platform.runLater(() -> {
+                    // Keep the hit count of a search made while warming up
+                    if (hitsLabel.getText().equals(WARMING_UP)) {
+                        hitsLabel.setText("");
+                    }
+                })
+        );
+    }
+
     private void showDetails(final BookReference reference) {
         try {
-            showDetails(FILE_SERVICE.readBook(reference));
+            queryService.findBookByIsbn(reference.isbn()).ifPresent(this::showDetails);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -176,8 +315,31 @@ public class MainController {
         }
     }
 
+    /**
+     * Stops the running search as soon as the input changes, and starts a new search
+     * when the input has not changed for a while.
+     */
+    private void handleInputChanged() {
+        queryForListService.cancel();
+        searchDebounce.playFromStart();
+    }
+
+    private void handleIncrementalSearchAction() {
+        final boolean noInput = authorField.getText().isBlank()
+                && titleField.getText().isBlank()
+                && descriptionField.getText().isBlank()
+                && minPagesSpinner.getValue() == 0
+                && maxPagesSpinner.getValue() == 0;
+        if (noInput) {
+            clearReferences();
+        } else {
+            startService(queryForListService);
+        }
+    }
+
     @FXML
     public void handleSearchAction() {
+        searchDebounce.stop();
         if (isbnField.getText().isBlank()) {
             startService(queryForListService);
         } else {
@@ -199,4 +361,19 @@ public class MainController {
         progressBar.visibleProperty().bind(service.runningProperty());
         service.restart();
     }
+
+    /**
+     * Releases the resources held by this controller. Called when the application stops.
+     */
+    public void close() {
+        suggestExecutor.shutdownNow();
+        pageExecutor.shutdownNow();
+        try {
+            suggestService.close();
+            queryMetrics.close();
+            queryService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
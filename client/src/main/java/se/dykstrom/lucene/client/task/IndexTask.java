@@ -16,19 +16,37 @@
 
 package se.dykstrom.lucene.client.task;
 
+import java.io.Closeable;
+
 import javafx.concurrent.Task;
 import se.dykstrom.lucene.client.util.Alerts;
-import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexConfig;
 import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.JmxMetrics;
+import se.dykstrom.lucene.service.QueryService;
 
+import static java.util.Objects.requireNonNull;
 import static se.dykstrom.lucene.client.util.AppConfig.BOOK_PATH;
 import static se.dykstrom.lucene.client.util.AppConfig.INDEX_PATH;
+import static se.dykstrom.lucene.client.util.AppConfig.INDEX_SHARDS;
 
 public class IndexTask extends Task<Void> {
+
+    private final QueryService queryService;
+
+    public IndexTask(final QueryService queryService) {
+        this.queryService = requireNonNull(queryService);
+    }
+
     @Override
     protected Void call() throws Exception {
-        IndexService indexService = new IndexServiceImpl(INDEX_PATH);
-        indexService.indexAllBooks(BOOK_PATH);
+        final var config = IndexConfig.DEFAULT.withShards(INDEX_SHARDS);
+        try (IndexServiceImpl indexService = new IndexServiceImpl(INDEX_PATH, new FileServiceImpl(), config);
+             Closeable ignored = JmxMetrics.register("client", indexService)) {
+            indexService.syncDirectory(BOOK_PATH);
+        }
+        queryService.refresh();
         return null;
     }
 
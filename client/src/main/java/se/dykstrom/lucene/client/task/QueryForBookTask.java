@@ -20,16 +20,16 @@ import javafx.concurrent.Task;
 import se.dykstrom.lucene.client.util.Alerts;
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.service.QueryService;
-import se.dykstrom.lucene.service.QueryServiceImpl;
 
-import static se.dykstrom.lucene.client.util.AppConfig.INDEX_PATH;
+import static java.util.Objects.requireNonNull;
 
 public class QueryForBookTask extends Task<Book> {
 
-    private final QueryService queryService = new QueryServiceImpl(INDEX_PATH);
+    private final QueryService queryService;
     private final String isbn;
 
-    public QueryForBookTask(final String isbn) {
+    public QueryForBookTask(final QueryService queryService, final String isbn) {
+        this.queryService = requireNonNull(queryService);
         this.isbn = isbn.strip();
     }
 
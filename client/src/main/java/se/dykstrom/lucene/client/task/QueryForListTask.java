@@ -16,30 +16,52 @@
 
 package se.dykstrom.lucene.client.task;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
 import javafx.concurrent.Task;
 import se.dykstrom.lucene.client.util.Alerts;
-import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.client.util.PagedReferenceList;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.service.Cancellation;
 import se.dykstrom.lucene.service.QueryService;
-import se.dykstrom.lucene.service.QueryServiceImpl;
 
-import static se.dykstrom.lucene.client.util.AppConfig.INDEX_PATH;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A task that finds the first page of book references, and returns a list that loads the other pages
+ * on the given executor when they are accessed. The task returns {@code null} if it is cancelled.
+ * <p>
+ * Cancelling the task also stops the search that is running in the query service.
+ */
+public class QueryForListTask extends Task<PagedReferenceList> {
+
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_PAGES = 10;
 
-public class QueryForListTask extends Task<ObservableList<BookReference>> {
+    private final Cancellation cancellation = new Cancellation();
 
-    private final QueryService queryService = new QueryServiceImpl(INDEX_PATH);
+    private final QueryService queryService;
+    private final Executor executor;
+    private final BookSort sort;
     private final String author;
     private final String title;
     private final String description;
     private final int minPages;
     private final int maxPages;
 
-    public QueryForListTask(final String author,
+    public QueryForListTask(final QueryService queryService,
+                            final Executor executor,
+                            final BookSort sort,
+                            final String author,
                             final String title,
                             final String description,
                             final Integer minPages,
                             final Integer maxPages) {
+        this.queryService = requireNonNull(queryService);
+        this.executor = requireNonNull(executor);
+        this.sort = requireNonNull(sort);
         this.author = author.strip();
         this.title = title.strip();
         this.description = description.strip();
@@ -48,10 +70,26 @@ public class QueryForListTask extends Task<ObservableList<BookReference>> {
     }
 
     @Override
-    protected ObservableList<BookReference> call() throws Exception {
-        return FXCollections.observableArrayList(queryService.findReferencesByFields(
-                author, title, description, minPages, maxPages
-        ));
+    protected PagedReferenceList call() throws Exception {
+        final PagedReferenceList.PageLoader loader = (request, cancellation) -> queryService.findReferencesByFields(
+                author, title, description, minPages, maxPages, request, cancellation
+        );
+        try {
+            final var request = PageRequest.first(PAGE_SIZE, sort);
+            return new PagedReferenceList(loader, executor, request, loader.load(request, cancellation), MAX_PAGES);
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the task, and the search it is running. The thread running the task is never interrupted,
+     * since an interrupt may close the file channels of the index.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        cancellation.cancel();
+        return super.cancel(false);
     }
 
     @Override
@@ -17,11 +17,45 @@
 package se.dykstrom.lucene.client.util;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
 
 public final class AppConfig {
 
     public static final Path BOOK_PATH = Path.of("data", "book");
     public static final Path INDEX_PATH = Path.of("data", "index");
 
+    /**
+     * The number of shards that the index is divided into. Can be set with system property {@code index.shards}.
+     * Changing the number of shards requires removing the index, and indexing all books again.
+     */
+    public static final int INDEX_SHARDS = Integer.getInteger("index.shards", 1);
+
+    /**
+     * The time to wait after the last keystroke before searching. Can be set with system property
+     * {@code search.debounce.millis}. A value of 0 disables search-as-you-type.
+     */
+    public static final Duration SEARCH_DEBOUNCE = Duration.ofMillis(Long.getLong("search.debounce.millis", 300));
+
+    /**
+     * A file with queries to warm up the index with at startup, one query per line. Can be set with system property
+     * {@code warmup.query.log}. If not set, the index is warmed up with a query that matches all books.
+     */
+    public static final Path WARM_UP_QUERY_LOG = Optional.ofNullable(System.getProperty("warmup.query.log"))
+            .map(Path::of)
+            .orElse(null);
+
+    /**
+     * Queries that take at least this long are written to the slow query log. Can be set with system property
+     * {@code slow.query.millis}.
+     */
+    public static final Duration SLOW_QUERY_THRESHOLD = Duration.ofMillis(Long.getLong("slow.query.millis", 500));
+
+    /**
+     * The share of queries, between 0 and 1, that are profiled and written to the slow query log.
+     * Can be set with system property {@code profile.sample.rate}.
+     */
+    public static final double PROFILE_SAMPLE_RATE = Double.parseDouble(System.getProperty("profile.sample.rate", "0"));
+
     private AppConfig() { }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.client.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javafx.application.Platform;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+/**
+ * Shows a popup menu with suggested completions below a text field while the user types.
+ * Suggestions are looked up on the given executor, and suggestions for text that has
+ * already changed again are discarded.
+ */
+public final class AutoCompletion {
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private AutoCompletion() { }
+
+    public static void install(final TextField field, final SuggestionProvider provider, final Executor executor) {
+        final var popup = new ContextMenu();
+        field.focusedProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue) {
+                popup.hide();
+            }
+        });
+        field.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (!field.isFocused() || newValue.isBlank()) {
+                popup.hide();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    final List<String> suggestions = provider.suggest(newValue, MAX_SUGGESTIONS);
+                    Platform.runLater(() -> showSuggestions(field, popup, newValue, suggestions));
+                } catch (IOException e) {
+                    // There is no index to suggest from yet
+                    Platform.runLater(popup::hide);
+                }
+            });
+        });
+    }
+
+    private static void showSuggestions(final TextField field,
+                                        final ContextMenu popup,
+                                        final String text,
+                                        final List<String> suggestions) {
+        if (!field.getText().equals(text)) {
+            return;
+        }
+        if (suggestions.isEmpty() || suggestions.equals(List.of(text))) {
+            popup.hide();
+            return;
+        }
+        popup.getItems().setAll(suggestions.stream().map(suggestion -> createItem(field, popup, suggestion)).toList());
+        if (!popup.isShowing()) {
+            popup.show(field, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private static MenuItem createItem(final TextField field, final ContextMenu popup, final String suggestion) {
+        final var item = new MenuItem(suggestion);
+        item.setMnemonicParsing(false);
+        item.setOnAction(event -> {
+            field.setText(suggestion);
+            field.positionCaret(suggestion.length());
+            popup.hide();
+        });
+        return item;
+    }
+
+    @FunctionalInterface
+    public interface SuggestionProvider {
+        List<String> suggest(final String text, final int count) throws IOException;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.client.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+import se.dykstrom.lucene.service.Cancellation;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only list of the references found by a search. The list loads the references page by page,
+ * when they are first accessed. It has one element per hit from the start, so a table view shows the
+ * total number of hits, and a scroll bar of the right size, as soon as the first page has been found.
+ * <p>
+ * A reference that has not been loaded yet is {@code null}. Accessing it starts loading its page on
+ * the given executor. When the page has been loaded, the list reports the references as replaced.
+ * Pages close to the accessed reference are loaded in advance, so that scrolling does not stop at
+ * page boundaries. Only the most recently used pages are kept in memory. Evicted references become
+ * {@code null} again, and are reported as replaced as well.
+ * <p>
+ * A page is found by following the cursor of the closest loaded page before it, and skipping the pages
+ * in between. The cursors of all pages loaded so far are kept, even after their pages have been evicted.
+ * <p>
+ * This list must only be used on the JavaFX application thread.
+ */
+public class PagedReferenceList extends ObservableListBase<BookReference> {
+
+    private static final int PREFETCH_DISTANCE = 50;
+
+    private final PageLoader loader;
+    private final Executor executor;
+    private final PageRequest firstRequest;
+    private final int pageSize;
+    private final int maxPages;
+    private final long totalHits;
+    private final int size;
+    private final String[] cursors;
+    private final Map<Integer, List<BookReference>> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private final Cancellation cancellation = new Cancellation();
+
+    // Read by the loading threads
+    private volatile int lastAccessedPage;
+    private volatile boolean closed;
+
+    private boolean failed;
+
+    /**
+     * Creates a new list from the first page of a search.
+     *
+     * @param loader Loads the other pages of the search.
+     * @param executor The executor that runs the loader.
+     * @param firstRequest The request that found the first page.
+     * @param firstPage The first page.
+     * @param maxPages The maximum number of pages to keep in memory.
+     */
+    public PagedReferenceList(final PageLoader loader,
+                              final Executor executor,
+                              final PageRequest firstRequest,
+                              final ReferencePage firstPage,
+                              final int maxPages) {
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("max pages must be positive: " + maxPages);
+        }
+        this.loader = requireNonNull(loader);
+        this.executor = requireNonNull(executor);
+        this.firstRequest = requireNonNull(firstRequest);
+        this.pageSize = firstRequest.size();
+        this.maxPages = maxPages;
+        this.totalHits = firstPage.totalHits();
+        this.size = (int) Math.min(totalHits, Integer.MAX_VALUE);
+        this.cursors = new String[(int) ((size + (long) pageSize - 1) / pageSize)];
+        if (cursors.length > 0) {
+            cursors[0] = firstPage.nextCursor();
+        }
+        pages.put(0, firstPage.references());
+    }
+
+    /**
+     * Returns the total number of hits found by the search.
+     */
+    public long totalHits() {
+        return totalHits;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public BookReference get(final int index) {
+        Objects.checkIndex(index, size);
+        final int pageIndex = index / pageSize;
+        lastAccessedPage = pageIndex;
+        final List<BookReference> page = pages.get(pageIndex);
+        if (page == null) {
+            loadPage(pageIndex);
+        }
+        loadPage(Math.max(0, index - PREFETCH_DISTANCE) / pageSize);
+        loadPage(Math.min(size - 1, index + PREFETCH_DISTANCE) / pageSize);
+        final int pageOffset = index % pageSize;
+        return page != null && pageOffset < page.size() ? page.get(pageOffset) : null;
+    }
+
+    /**
+     * Stops loading pages. Searches for pages that are already running are cancelled.
+     */
+    public void close() {
+        closed = true;
+        cancellation.cancel();
+    }
+
+    /**
+     * Starts loading the given page, unless it is already loaded or being loaded.
+     */
+    private void loadPage(final int pageIndex) {
+        if (closed || failed || pages.containsKey(pageIndex) || !loadingPages.add(pageIndex)) {
+            return;
+        }
+        final PageRequest request = createRequest(pageIndex);
+        executor.execute(() -> {
+            // Skip pages that the user has already scrolled far away from
+            if (closed || Math.abs(pageIndex - lastAccessedPage) > maxPages / 2) {
+                Platform.runLater(() -> loadingPages.remove(pageIndex));
+                return;
+            }
+            try {
+                final ReferencePage page = loader.load(request, cancellation);
+                Platform.runLater(() -> pageLoaded(pageIndex, page));
+            } catch (CancellationException e) {
+                // The list has been closed
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> pageFailed(pageIndex, e));
+            }
+        });
+    }
+
+    /**
+     * Returns a request for the given page that follows the cursor of the closest page before it.
+     */
+    private PageRequest createRequest(final int pageIndex) {
+        for (int i = pageIndex - 1; i >= 0; i--) {
+            if (cursors[i] != null) {
+                return firstRequest.next(cursors[i]).withOffset((pageIndex - i - 1) * pageSize);
+            }
+        }
+        return firstRequest.withOffset(pageIndex * pageSize);
+    }
+
+    private void pageLoaded(final int pageIndex, final ReferencePage page) {
+        loadingPages.remove(pageIndex);
+        if (closed) {
+            return;
+        }
+        if (page.nextCursor() != null) {
+            cursors[pageIndex] = page.nextCursor();
+        }
+        final List<BookReference> references = page.references();
+        pages.put(pageIndex, references);
+        fireReplaced(pageIndex, Collections.nCopies(references.size(), null));
+
+        while (pages.size() > maxPages) {
+            final var eldest = pages.entrySet().iterator().next();
+            pages.remove(eldest.getKey());
+            fireReplaced(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void pageFailed(final int pageIndex, final Exception exception) {
+        loadingPages.remove(pageIndex);
+        if (!closed && !failed) {
+            // Stop loading, instead of showing the same error for every page that the user scrolls to
+            failed = true;
+            Alerts.showErrorAlert("Failed to find books:", exception);
+        }
+    }
+
+    /**
+     * Reports that the references of the given page, that used to be the given references, have been replaced.
+     */
+    private void fireReplaced(final int pageIndex, final List<BookReference> removed) {
+        final int from = pageIndex * pageSize;
+        final int to = Math.min(from + removed.size(), size);
+        if (from < to) {
+            beginChange();
+            nextReplace(from, to, removed.subList(0, to - from));
+            endChange();
+        }
+    }
+
+    /**
+     * Loads one page of search results.
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        ReferencePage load(final PageRequest request, final Cancellation cancellation) throws IOException;
+    }
+}
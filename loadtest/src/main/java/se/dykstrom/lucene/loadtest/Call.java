@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.util.List;
+
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One call to the query service in a workload.
+ */
+public record Call(Operation operation, List<String> arguments) {
+
+    public Call {
+        requireNonNull(operation);
+        arguments = List.copyOf(arguments);
+        if (arguments.size() != operation.arity()) {
+            throw new IllegalArgumentException(operation.method() + " takes " + operation.arity()
+                    + " arguments, not " + arguments.size());
+        }
+    }
+
+    public static Call of(final Operation operation, final String... arguments) {
+        return new Call(operation, List.of(arguments));
+    }
+
+    /**
+     * Makes this call to the given query service, and returns the result.
+     */
+    Object execute(final QueryService queryService) throws IOException {
+        return operation.execute(queryService, arguments);
+    }
+}
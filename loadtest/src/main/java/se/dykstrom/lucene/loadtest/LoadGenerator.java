@@ -0,0 +1,230 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Replays a workload against a query service at a target rate, using a number of concurrent workers.
+ * <p>
+ * The load generator runs an open-loop schedule: operation number {@code i} is intended to start at
+ * {@code i / rate} seconds after the start of the load test, whether the previous operations have completed
+ * or not. Workers take operations from the schedule in order, and wait until their intended start time.
+ * When all workers are busy, because the service has stalled, the following operations start late.
+ * Their response time is measured from the intended start time, not from the actual start time, so the
+ * time they spent waiting is included in the latencies. Measuring from the actual start time would hide
+ * the stall, since the load generator would stop sending requests while the service is slow - the problem
+ * known as coordinated omission. The time from the actual start is also reported, as the service time.
+ */
+public final class LoadGenerator {
+
+    private static final System.Logger LOGGER = System.getLogger(LoadGenerator.class.getName());
+
+    private final QueryService queryService;
+    private final int workers;
+    private final double rate;
+
+    /**
+     * Creates a load generator.
+     *
+     * @param queryService The query service to send the operations to.
+     * @param workers The number of concurrent workers, that is, the maximum number of outstanding operations.
+     * @param rate The target rate in operations per second.
+     */
+    public LoadGenerator(final QueryService queryService, final int workers, final double rate) {
+        this.queryService = requireNonNull(queryService);
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        if (!(rate > 0.0 && Double.isFinite(rate))) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.workers = workers;
+        this.rate = rate;
+    }
+
+    /**
+     * Replays the given calls, starting over from the first call if the list runs out, first for the warm-up
+     * period, and then for the measured period. Only operations that are intended to start in the measured
+     * period are included in the report.
+     */
+    public LoadTestReport run(final List<Call> calls, final Duration warmUp, final Duration duration)
+            throws InterruptedException {
+        if (calls.isEmpty()) {
+            throw new IllegalArgumentException("no calls to replay");
+        }
+        if (warmUp.isNegative() || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("invalid warm-up or duration: " + warmUp + ", " + duration);
+        }
+
+        final double intervalNanos = 1_000_000_000.0 / rate;
+        final long warmUpOperations = (long) Math.ceil(warmUp.toNanos() / intervalNanos);
+        final long totalOperations = warmUpOperations + Math.max(1, (long) (duration.toNanos() / intervalNanos));
+        final var schedule = new Schedule(System.nanoTime(), intervalNanos, warmUpOperations, totalOperations);
+
+        final List<Worker> workerList = new ArrayList<>(workers);
+        final List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            final var worker = new Worker(calls, schedule);
+            workerList.add(worker);
+            threads.add(new Thread(worker, "loadtest-worker-" + (i + 1)));
+        }
+        threads.forEach(Thread::start);
+        try {
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            threads.forEach(Thread::interrupt);
+        }
+
+        final var responseTimes = new Histogram();
+        final var serviceTimes = new Histogram();
+        final Map<Operation, Histogram> responseTimesByOperation = new EnumMap<>(Operation.class);
+        long errors = 0;
+        long lastEnd = schedule.measureFrom();
+        for (final Worker worker : workerList) {
+            responseTimes.add(worker.responseTimes);
+            serviceTimes.add(worker.serviceTimes);
+            worker.responseTimesByOperation.forEach((operation, histogram) ->
+                    responseTimesByOperation.computeIfAbsent(operation, o -> new Histogram()).add(histogram));
+            errors += worker.errors;
+            lastEnd = Math.max(lastEnd, worker.lastEnd);
+        }
+
+        final long operations = responseTimes.count();
+        final var elapsed = Duration.ofNanos(Math.max(1, lastEnd - schedule.measureFrom()));
+        final double throughput = operations * 1_000_000_000.0 / elapsed.toNanos();
+        final Map<Operation, Percentiles> percentilesByOperation = new EnumMap<>(Operation.class);
+        responseTimesByOperation.forEach((operation, histogram) ->
+                percentilesByOperation.put(operation, Percentiles.of(histogram)));
+        return new LoadTestReport(rate, throughput, operations, errors, elapsed, Percentiles.of(responseTimes),
+                Percentiles.of(serviceTimes), percentilesByOperation);
+    }
+
+    private static void parkUntil(final long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * The intended start times of all operations.
+     */
+    private static final class Schedule {
+
+        private final AtomicLong next = new AtomicLong();
+        private final long start;
+        private final double intervalNanos;
+        private final long warmUpOperations;
+        private final long totalOperations;
+
+        private Schedule(final long start, final double intervalNanos, final long warmUpOperations,
+                         final long totalOperations) {
+            this.start = start;
+            this.intervalNanos = intervalNanos;
+            this.warmUpOperations = warmUpOperations;
+            this.totalOperations = totalOperations;
+        }
+
+        /**
+         * Returns the number of the next operation, or -1 if all operations have been taken.
+         */
+        long take() {
+            final long operation = next.getAndIncrement();
+            return operation < totalOperations ? operation : -1;
+        }
+
+        long intendedStart(final long operation) {
+            return start + (long) (operation * intervalNanos);
+        }
+
+        boolean isMeasured(final long operation) {
+            return operation >= warmUpOperations;
+        }
+
+        long measureFrom() {
+            return intendedStart(warmUpOperations);
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final List<Call> calls;
+        private final Schedule schedule;
+
+        private final Histogram responseTimes = new Histogram();
+        private final Histogram serviceTimes = new Histogram();
+        private final Map<Operation, Histogram> responseTimesByOperation = new EnumMap<>(Operation.class);
+        private long errors;
+        private long lastEnd;
+        private boolean loggedError;
+
+        private Worker(final List<Call> calls, final Schedule schedule) {
+            this.calls = calls;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public void run() {
+            long operation;
+            while ((operation = schedule.take()) >= 0 && !Thread.currentThread().isInterrupted()) {
+                final long intendedStart = schedule.intendedStart(operation);
+                parkUntil(intendedStart);
+
+                final Call call = calls.get((int) (operation % calls.size()));
+                final long actualStart = System.nanoTime();
+                boolean failed = false;
+                try {
+                    call.execute(queryService);
+                } catch (IOException | RuntimeException e) {
+                    failed = true;
+                    if (!loggedError) {
+                        LOGGER.log(Level.WARNING, "Failed to execute " + call, e);
+                        loggedError = true;
+                    }
+                }
+                final long end = System.nanoTime();
+
+                if (schedule.isMeasured(operation)) {
+                    final long responseTime = end - intendedStart;
+                    responseTimes.record(responseTime);
+                    serviceTimes.record(end - actualStart);
+                    responseTimesByOperation.computeIfAbsent(call.operation(), o -> new Histogram())
+                            .record(responseTime);
+                    if (failed) {
+                        errors++;
+                    }
+                    lastEnd = end;
+                }
+            }
+        }
+    }
+}
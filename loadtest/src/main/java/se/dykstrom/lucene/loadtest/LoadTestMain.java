@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import se.dykstrom.lucene.benchmark.BookCorpus;
+import se.dykstrom.lucene.service.BookStorage;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexConfig;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.IndexStats;
+import se.dykstrom.lucene.service.QueryConfig;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+
+/**
+ * Runs a load test against a query service, and prints the report. The load test is configured with
+ * system properties:
+ * <ul>
+ *     <li>{@code loadtest.index} - the index directory, by default {@code data/loadtest-index}</li>
+ *     <li>{@code loadtest.books} - the number of books in the synthetic corpus, if the index must be built</li>
+ *     <li>{@code loadtest.shards} - the number of shards that the index is divided into</li>
+ *     <li>{@code loadtest.seed} - the seed used to generate the corpus and the workload</li>
+ *     <li>{@code loadtest.rebuild} - true to build the index even if it already exists</li>
+ *     <li>{@code loadtest.workload} - a workload file to replay, instead of generating a workload</li>
+ *     <li>{@code loadtest.record} - a file to write the generated workload to</li>
+ *     <li>{@code loadtest.calls} - the number of calls to generate</li>
+ *     <li>{@code loadtest.mix} - the weights of the fields, ISBN, query, and author operations</li>
+ *     <li>{@code loadtest.rate} - the target rate in operations per second</li>
+ *     <li>{@code loadtest.workers} - the number of concurrent workers</li>
+ *     <li>{@code loadtest.warmup} - the warm-up period in seconds</li>
+ *     <li>{@code loadtest.duration} - the measured period in seconds</li>
+ *     <li>{@code loadtest.cache.size} - the size of the result cache, 0 to disable it</li>
+ * </ul>
+ */
+public final class LoadTestMain {
+
+    private LoadTestMain() { }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Path indexPath = Path.of(System.getProperty("loadtest.index", "data/loadtest-index"));
+        final int books = Integer.getInteger("loadtest.books", 1_000_000);
+        final long seed = Long.getLong("loadtest.seed", BookCorpus.DEFAULT_SEED);
+        final int shards = Integer.getInteger("loadtest.shards", 1);
+
+        if (Boolean.getBoolean("loadtest.rebuild") || !indexExists(indexPath)) {
+            buildIndex(indexPath, books, seed, shards);
+        }
+
+        final List<Call> calls;
+        final String workloadFile = System.getProperty("loadtest.workload");
+        if (workloadFile != null) {
+            calls = Workload.read(Path.of(workloadFile));
+        } else {
+            final var mix = OperationMix.parse(System.getProperty("loadtest.mix", "40,20,30,10"));
+            calls = Workload.generate(Integer.getInteger("loadtest.calls", 100_000), mix, books, seed);
+        }
+        final String recordFile = System.getProperty("loadtest.record");
+        if (recordFile != null) {
+            Workload.write(calls, Path.of(recordFile));
+        }
+
+        final double rate = Double.parseDouble(System.getProperty("loadtest.rate", "1000"));
+        final int workers = Integer.getInteger("loadtest.workers", 16);
+        final var warmUp = Duration.ofSeconds(Long.getLong("loadtest.warmup", 10));
+        final var duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 60));
+        final var queryConfig = QueryConfig.DEFAULT
+                .withCacheSize(Integer.getInteger("loadtest.cache.size", QueryConfig.DEFAULT.cacheSize()))
+                .withShards(shards);
+
+        System.out.printf("Replaying %d calls at %.1f ops/s with %d workers, warm-up %d s, duration %d s%n",
+                calls.size(), rate, workers, warmUp.toSeconds(), duration.toSeconds());
+        try (var queryService = new QueryServiceImpl(indexPath, new FileServiceImpl(), queryConfig)) {
+            final LoadTestReport report = new LoadGenerator(queryService, workers, rate).run(calls, warmUp, duration);
+            System.out.println();
+            System.out.print(report.format());
+        }
+    }
+
+    /**
+     * Returns true if there is an index, sharded or not, in the given directory.
+     */
+    private static boolean indexExists(final Path indexPath) throws IOException {
+        if (!Files.isDirectory(indexPath)) {
+            return false;
+        }
+        if (Files.exists(indexPath.resolve("current"))) {
+            // The index has been rebuilt into a new generation at least once
+            return true;
+        }
+        final Path indexOrFirstShard = Files.isDirectory(indexPath.resolve("shard-0"))
+                ? indexPath.resolve("shard-0")
+                : indexPath;
+        try (var directory = FSDirectory.open(indexOrFirstShard)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+
+    private static void buildIndex(final Path indexPath, final int books, final long seed, final int shards)
+            throws IOException {
+        System.out.printf("Building index of %d books in %d shards in %s%n", books, shards, indexPath);
+        IOUtils.rm(indexPath);
+        final Path ndjsonFile = Files.createTempFile("loadtest-corpus", ".ndjson");
+        try {
+            BookCorpus.writeNdjsonFile(books, seed, ndjsonFile);
+            final var indexConfig = IndexConfig.DEFAULT.withBookStorage(BookStorage.INDEX).withShards(shards);
+            try (var indexService = new IndexServiceImpl(indexPath, new FileServiceImpl(), indexConfig)) {
+                final IndexStats stats = indexService.indexBookStream(ndjsonFile);
+                System.out.printf("Indexed %d books in %d s (%.0f books/s)%n", stats.documents(),
+                        stats.elapsed().toSeconds(), stats.documentsPerSecond());
+            }
+        } finally {
+            Files.deleteIfExists(ndjsonFile);
+        }
+    }
+}
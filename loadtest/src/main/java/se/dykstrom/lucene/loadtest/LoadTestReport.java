@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The result of a load test.
+ *
+ * @param targetRate The rate that operations were started at, in operations per second.
+ * @param throughput The rate that operations were completed at, in operations per second.
+ * @param operations The number of operations that were measured, excluding the warm-up.
+ * @param errors The number of measured operations that failed.
+ * @param elapsed The time that the measured operations took.
+ * @param responseTime The time from when each operation should have started, according to the target rate,
+ *                     until it completed. This includes the time that operations waited for a worker.
+ * @param serviceTime The time from when each operation actually started until it completed.
+ * @param responseTimeByOperation The response time of each type of operation.
+ */
+public record LoadTestReport(double targetRate,
+                             double throughput,
+                             long operations,
+                             long errors,
+                             Duration elapsed,
+                             Percentiles responseTime,
+                             Percentiles serviceTime,
+                             Map<Operation, Percentiles> responseTimeByOperation) {
+
+    public LoadTestReport {
+        requireNonNull(elapsed);
+        requireNonNull(responseTime);
+        requireNonNull(serviceTime);
+        responseTimeByOperation = Map.copyOf(responseTimeByOperation);
+    }
+
+    /**
+     * Formats this report as a table, with all latencies in milliseconds.
+     */
+    public String format() {
+        final var builder = new StringBuilder();
+        builder.append(String.format("Target rate: %.1f ops/s, throughput: %.1f ops/s%n", targetRate, throughput));
+        builder.append(String.format("Operations: %d, errors: %d, elapsed: %.1f s%n%n",
+                operations, errors, elapsed.toMillis() / 1000.0));
+        builder.append(String.format("%-24s %10s %10s %10s %10s %10s%n", "", "p50", "p95", "p99", "p99.9", "max"));
+        appendRow(builder, "response time", responseTime);
+        appendRow(builder, "service time", serviceTime);
+        for (final Operation operation : Operation.values()) {
+            final Percentiles percentiles = responseTimeByOperation.get(operation);
+            if (percentiles != null) {
+                appendRow(builder, operation.method(), percentiles);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendRow(final StringBuilder builder, final String name, final Percentiles percentiles) {
+        builder.append(String.format("%-24s %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, percentiles.p50(),
+                percentiles.p95(), percentiles.p99(), percentiles.p999(), percentiles.max()));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.util.List;
+
+import se.dykstrom.lucene.service.QueryService;
+
+/**
+ * The query service operations that a workload is made of. Each operation is recorded in a workload file
+ * with the name of the query service method, and the method arguments as strings.
+ */
+public enum Operation {
+
+    /** Arguments: author, title, description, min pages, max pages. */
+    FIND_REFERENCES_BY_FIELDS("findReferencesByFields", 5) {
+        @Override
+        Object execute(final QueryService queryService, final List<String> arguments) throws IOException {
+            return queryService.findReferencesByFields(arguments.get(0), arguments.get(1), arguments.get(2),
+                    Integer.parseInt(arguments.get(3)), Integer.parseInt(arguments.get(4)));
+        }
+    },
+
+    /** Arguments: ISBN. */
+    FIND_BOOK_BY_ISBN("findBookByIsbn", 1) {
+        @Override
+        Object execute(final QueryService queryService, final List<String> arguments) throws IOException {
+            return queryService.findBookByIsbn(arguments.get(0));
+        }
+    },
+
+    /** Arguments: query in query parser syntax. */
+    FIND_REFERENCES_BY_QUERY("findReferencesByQuery", 1) {
+        @Override
+        Object execute(final QueryService queryService, final List<String> arguments) throws IOException {
+            return queryService.findReferencesByQuery(arguments.get(0));
+        }
+    },
+
+    /** Arguments: author. */
+    FIND_BOOKS_BY_AUTHOR("findBooksByAuthor", 1) {
+        @Override
+        Object execute(final QueryService queryService, final List<String> arguments) throws IOException {
+            return queryService.findBooksByAuthor(arguments.get(0));
+        }
+    };
+
+    private final String method;
+    private final int arity;
+
+    Operation(final String method, final int arity) {
+        this.method = method;
+        this.arity = arity;
+    }
+
+    /**
+     * Returns the name of the query service method.
+     */
+    public String method() {
+        return method;
+    }
+
+    /**
+     * Returns the number of arguments of the query service method.
+     */
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * Returns the operation that calls the query service method with the given name.
+     *
+     * @throws IllegalArgumentException If there is no such operation.
+     */
+    public static Operation ofMethod(final String method) {
+        for (final Operation operation : values()) {
+            if (operation.method.equals(method)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("unknown operation: " + method);
+    }
+
+    abstract Object execute(QueryService queryService, List<String> arguments) throws IOException;
+}
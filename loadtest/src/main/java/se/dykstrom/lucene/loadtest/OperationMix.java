@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * The relative weights of the operations in a generated workload.
+ */
+public record OperationMix(int fields, int isbn, int query, int author) {
+
+    /**
+     * Mostly searches from the search form of the client, and some lookups of single books.
+     */
+    public static final OperationMix DEFAULT = new OperationMix(40, 20, 30, 10);
+
+    public OperationMix {
+        if (fields < 0 || isbn < 0 || query < 0 || author < 0) {
+            throw new IllegalArgumentException("weights must not be negative: " + fields + "," + isbn + ","
+                    + query + "," + author);
+        }
+        if (fields + isbn + query + author == 0) {
+            throw new IllegalArgumentException("at least one weight must be positive");
+        }
+    }
+
+    /**
+     * Parses a mix from four comma-separated weights, in the order fields, ISBN, query, and author.
+     */
+    public static OperationMix parse(final String text) {
+        final String[] weights = text.split(",");
+        if (weights.length != 4) {
+            throw new IllegalArgumentException("expected four weights: " + text);
+        }
+        try {
+            return new OperationMix(
+                    Integer.parseInt(weights[0].strip()),
+                    Integer.parseInt(weights[1].strip()),
+                    Integer.parseInt(weights[2].strip()),
+                    Integer.parseInt(weights[3].strip())
+            );
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid weights: " + text);
+        }
+    }
+
+    /**
+     * Picks a random operation, with a probability proportional to its weight.
+     */
+    Operation pick(final SplittableRandom random) {
+        int value = random.nextInt(fields + isbn + query + author);
+        if (value < fields) {
+            return Operation.FIND_REFERENCES_BY_FIELDS;
+        }
+        value -= fields;
+        if (value < isbn) {
+            return Operation.FIND_BOOK_BY_ISBN;
+        }
+        value -= isbn;
+        return value < query ? Operation.FIND_REFERENCES_BY_QUERY : Operation.FIND_BOOKS_BY_AUTHOR;
+    }
+}
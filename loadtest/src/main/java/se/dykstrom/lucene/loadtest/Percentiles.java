@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+/**
+ * Latency percentiles in milliseconds.
+ */
+public record Percentiles(double p50, double p95, double p99, double p999, double max) {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    static Percentiles of(final Histogram histogram) {
+        return new Percentiles(
+                histogram.percentile(50.0) / NANOS_PER_MILLI,
+                histogram.percentile(95.0) / NANOS_PER_MILLI,
+                histogram.percentile(99.0) / NANOS_PER_MILLI,
+                histogram.percentile(99.9) / NANOS_PER_MILLI,
+                histogram.max() / NANOS_PER_MILLI
+        );
+    }
+}
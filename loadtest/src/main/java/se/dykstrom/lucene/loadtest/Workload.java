@@ -0,0 +1,161 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import se.dykstrom.lucene.benchmark.BookCorpus;
+
+/**
+ * Creates, reads and writes workloads, that is, lists of calls to replay against a query service.
+ * <p>
+ * A workload file has one call per line: the name of the query service method, followed by its arguments,
+ * separated by tabs. Blank lines, and lines that start with {@code #}, are ignored. A workload can be recorded
+ * from production, or generated to match a synthetic corpus.
+ */
+public final class Workload {
+
+    private static final String SEPARATOR = "\t";
+
+    private static final List<String> FIRST_NAMES = BookCorpus.firstNames();
+    private static final List<String> LAST_NAMES = BookCorpus.lastNames();
+    private static final List<String> WORDS = BookCorpus.words();
+
+    private Workload() { }
+
+    /**
+     * Generates calls that search a corpus generated by {@link BookCorpus}. The searches are about as
+     * selective as the searches that users make in the client: the fields searches combine an author
+     * with a title word or a page range, and the queries combine at least two terms.
+     *
+     * @param calls The number of calls to generate.
+     * @param mix The relative weights of the operations.
+     * @param books The number of books in the corpus.
+     * @param seed The seed of the random generator. The same arguments always generate the same calls.
+     */
+    public static List<Call> generate(final int calls, final OperationMix mix, final int books, final long seed) {
+        final var random = new SplittableRandom(seed);
+        final List<Call> workload = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            workload.add(switch (mix.pick(random)) {
+                case FIND_REFERENCES_BY_FIELDS -> generateFieldsCall(random);
+                case FIND_BOOK_BY_ISBN -> generateIsbnCall(random, books);
+                case FIND_REFERENCES_BY_QUERY -> generateQueryCall(random);
+                case FIND_BOOKS_BY_AUTHOR -> generateAuthorCall(random);
+            });
+        }
+        return workload;
+    }
+
+    /**
+     * Reads a workload file.
+     *
+     * @throws IllegalArgumentException If a line is not a valid call.
+     */
+    public static List<Call> read(final Path file) throws IOException {
+        final List<Call> workload = new ArrayList<>();
+        int lineNumber = 0;
+        for (final String line : Files.readAllLines(file)) {
+            lineNumber++;
+            if (!line.isBlank() && !line.startsWith("#")) {
+                final String[] fields = line.split(SEPARATOR, -1);
+                try {
+                    final var operation = Operation.ofMethod(fields[0]);
+                    workload.add(new Call(operation, Arrays.asList(fields).subList(1, fields.length)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return workload;
+    }
+
+    /**
+     * Writes a workload file.
+     */
+    public static void write(final List<Call> workload, final Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (final Call call : workload) {
+                writer.write(call.operation().method());
+                for (final String argument : call.arguments()) {
+                    if (argument.contains(SEPARATOR) || argument.contains("\n")) {
+                        throw new IllegalArgumentException("argument contains tab or newline: " + argument);
+                    }
+                    writer.write(SEPARATOR);
+                    writer.write(argument);
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private static Call generateFieldsCall(final SplittableRandom random) {
+        final String author = pick(random, LAST_NAMES);
+        if (random.nextBoolean()) {
+            return Call.of(Operation.FIND_REFERENCES_BY_FIELDS, author, pick(random, WORDS), "", "0", "0");
+        } else {
+            final int minPages = 50 + random.nextInt(900);
+            return Call.of(Operation.FIND_REFERENCES_BY_FIELDS, author, "", "", String.valueOf(minPages),
+                    String.valueOf(minPages + 50));
+        }
+    }
+
+    private static Call generateIsbnCall(final SplittableRandom random, final int books) {
+        // Some users look for books that are not in the index
+        final int index = random.nextInt(books + books / 20 + 1);
+        return Call.of(Operation.FIND_BOOK_BY_ISBN, BookCorpus.isbn(index));
+    }
+
+    private static Call generateQueryCall(final SplittableRandom random) {
+        final String word = pick(random, WORDS);
+        final String otherWord = pick(random, WORDS);
+        final String author = pick(random, LAST_NAMES).toLowerCase();
+        final String query = switch (random.nextInt(4)) {
+            case 0 -> "+title:" + word + " +title:" + otherWord;
+            case 1 -> "title:\"" + word + " " + otherWord + "\"";
+            case 2 -> "+author:" + author + " +title:" + word;
+            default -> "+author:" + author + " +title:" + word.substring(0, Math.min(3, word.length())) + "*";
+        };
+        return Call.of(Operation.FIND_REFERENCES_BY_QUERY, query);
+    }
+
+    private static Call generateAuthorCall(final SplittableRandom random) {
+        final String author = pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES);
+        // Some users misspell the name
+        return Call.of(Operation.FIND_BOOKS_BY_AUTHOR, random.nextInt(10) == 0 ? swapLetters(random, author) : author);
+    }
+
+    private static String swapLetters(final SplittableRandom random, final String text) {
+        final int index = random.nextInt(text.length() - 1);
+        final char[] chars = text.toCharArray();
+        final char c = chars[index];
+        chars[index] = chars[index + 1];
+        chars[index + 1] = c;
+        return new String(chars);
+    }
+
+    private static String pick(final SplittableRandom random, final List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
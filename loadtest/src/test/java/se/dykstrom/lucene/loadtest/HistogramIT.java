@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramIT {
+
+    @Test
+    void shouldReturnZeroWhenEmpty() {
+        final var histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99.0));
+    }
+
+    @Test
+    void shouldRecordSmallValuesExactly() {
+        final var histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.percentile(50.0));
+        assertEquals(99, histogram.percentile(99.0));
+        assertEquals(100, histogram.percentile(100.0));
+        assertEquals(100, histogram.max());
+    }
+
+    @Test
+    void shouldRecordLargeValuesWithinOnePercent() {
+        final var histogram = new Histogram();
+        final var random = new SplittableRandom(17);
+        final long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong(1_000, 10_000_000_000L);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (final double percentage : new double[]{50.0, 95.0, 99.0, 99.9}) {
+            final long expected = values[(int) Math.ceil(percentage / 100.0 * values.length) - 1];
+            final long actual = histogram.percentile(percentage);
+            assertTrue(Math.abs(actual - expected) <= expected / 100, percentage + ": " + actual + " != " + expected);
+        }
+    }
+
+    @Test
+    void shouldAddHistograms() {
+        final var histogram = new Histogram();
+        final var other = new Histogram();
+        histogram.record(10);
+        other.record(20);
+        other.record(1_000_000);
+
+        histogram.add(other);
+
+        assertEquals(3, histogram.count());
+        assertEquals(20, histogram.percentile(50.0));
+        assertEquals(1_000_000, histogram.max());
+    }
+}
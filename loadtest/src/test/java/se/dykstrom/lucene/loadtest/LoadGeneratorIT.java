@@ -0,0 +1,147 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.benchmark.BookCorpus;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.QueryService;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorIT {
+
+    private static final int BOOKS = 500;
+
+    private static final Call CALL = Call.of(Operation.FIND_BOOK_BY_ISBN, BookCorpus.isbn(0));
+
+    private Path ndjsonFile;
+    private Path indexPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ndjsonFile = Files.createTempFile("tempBooks", ".ndjson");
+        indexPath = Files.createTempDirectory("tempIndex");
+        BookCorpus.writeNdjsonFile(BOOKS, BookCorpus.DEFAULT_SEED, ndjsonFile);
+        try (var indexService = new IndexServiceImpl(indexPath, new FileServiceImpl())) {
+            indexService.indexBookStream(ndjsonFile);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IOUtils.rm(ndjsonFile, indexPath);
+    }
+
+    @Test
+    void shouldReplayGeneratedWorkload() throws Exception {
+        // Given
+        final List<Call> calls = Workload.generate(100, OperationMix.DEFAULT, BOOKS, BookCorpus.DEFAULT_SEED);
+
+        try (var queryService = new QueryServiceImpl(indexPath)) {
+            // When
+            final var report = new LoadGenerator(queryService, 2, 200).run(calls, Duration.ofMillis(200),
+                    Duration.ofSeconds(1));
+
+            // Then
+            assertEquals(200, report.operations());
+            assertEquals(0, report.errors());
+            assertEquals(Operation.values().length, report.responseTimeByOperation().size());
+            assertTrue(report.responseTime().p50() >= report.serviceTime().p50());
+            assertTrue(report.responseTime().max() >= report.responseTime().p999());
+            assertTrue(report.throughput() > 0);
+            assertTrue(report.format().contains("findReferencesByFields"));
+        }
+    }
+
+    @Test
+    void shouldIncludeStallInResponseTimeButNotInServiceTime() throws Exception {
+        // Given a service that stalls for 300 ms once, and one worker that sends 100 operations per second
+        final var count = new AtomicInteger();
+        final QueryService queryService = queryService(() -> {
+            if (count.incrementAndGet() == 10) {
+                Thread.sleep(300);
+            }
+            return null;
+        });
+
+        // When
+        final var report = new LoadGenerator(queryService, 1, 100).run(List.of(CALL), Duration.ZERO,
+                Duration.ofSeconds(1));
+
+        // Then the operations queued up behind the stall are slow, even though the service is fast again
+        assertEquals(100, report.operations());
+        assertTrue(report.responseTime().p95() > 200, "response time p95: " + report.responseTime().p95());
+        assertTrue(report.serviceTime().p95() < 50, "service time p95: " + report.serviceTime().p95());
+        assertTrue(report.serviceTime().max() >= 300, "service time max: " + report.serviceTime().max());
+    }
+
+    @Test
+    void shouldCountErrors() throws Exception {
+        // Given
+        final var count = new AtomicInteger();
+        final QueryService queryService = queryService(() -> {
+            if (count.incrementAndGet() % 10 == 0) {
+                throw new IOException("failed");
+            }
+            return null;
+        });
+
+        // When
+        final var report = new LoadGenerator(queryService, 1, 200).run(List.of(CALL), Duration.ZERO,
+                Duration.ofMillis(500));
+
+        // Then
+        assertEquals(100, report.operations());
+        assertEquals(10, report.errors());
+    }
+
+    @Test
+    void shouldNotAcceptInvalidArguments() throws IOException {
+        try (var queryService = new QueryServiceImpl(indexPath)) {
+            assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(queryService, 0, 100));
+            assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(queryService, 1, 0));
+            final var generator = new LoadGenerator(queryService, 1, 100);
+            assertThrows(IllegalArgumentException.class, () -> generator.run(List.of(), Duration.ZERO,
+                    Duration.ofSeconds(1)));
+        }
+    }
+
+    /**
+     * Returns a query service where every method calls the given action.
+     */
+    private static QueryService queryService(final Callable<Object> action) {
+        return (QueryService) Proxy.newProxyInstance(QueryService.class.getClassLoader(),
+                new Class<?>[]{QueryService.class}, (proxy, method, args) -> action.call());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkloadIT {
+
+    private Path workloadFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workloadFile = Files.createTempFile("tempWorkload", ".tsv");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(workloadFile);
+    }
+
+    @Test
+    void shouldGenerateSameWorkloadFromSameSeed() {
+        final List<Call> workload = Workload.generate(1000, OperationMix.DEFAULT, 1000, 17);
+        assertEquals(1000, workload.size());
+        assertEquals(workload, Workload.generate(1000, OperationMix.DEFAULT, 1000, 17));
+        assertNotEquals(workload, Workload.generate(1000, OperationMix.DEFAULT, 1000, 18));
+    }
+
+    @Test
+    void shouldGenerateOnlyOperationsInMix() {
+        final List<Call> workload = Workload.generate(100, new OperationMix(0, 1, 0, 0), 1000, 17);
+        assertTrue(workload.stream().allMatch(call -> call.operation() == Operation.FIND_BOOK_BY_ISBN));
+    }
+
+    @Test
+    void shouldWriteAndReadWorkload() throws IOException {
+        // Given
+        final List<Call> workload = Workload.generate(1000, OperationMix.DEFAULT, 1000, 17);
+
+        // When
+        Workload.write(workload, workloadFile);
+
+        // Then
+        assertEquals(workload, Workload.read(workloadFile));
+    }
+
+    @Test
+    void shouldSkipCommentsAndBlankLines() throws IOException {
+        // Given
+        Files.writeString(workloadFile, """
+                # Recorded workload
+
+                findBookByIsbn\t978-1
+                findReferencesByFields\tLindgren\t\t\t0\t0
+                """);
+
+        // When
+        final List<Call> workload = Workload.read(workloadFile);
+
+        // Then
+        assertEquals(List.of(
+                Call.of(Operation.FIND_BOOK_BY_ISBN, "978-1"),
+                Call.of(Operation.FIND_REFERENCES_BY_FIELDS, "Lindgren", "", "", "0", "0")
+        ), workload);
+    }
+
+    @Test
+    void shouldNotReadInvalidCall() throws IOException {
+        // Given
+        Files.writeString(workloadFile, "findBookByIsbn\t978-1\nfindBookByTitle\tHavet\n");
+
+        // When
+        final var e = assertThrows(IllegalArgumentException.class, () -> Workload.read(workloadFile));
+
+        // Then
+        assertTrue(e.getMessage().endsWith(":2: unknown operation: findBookByTitle"), e.getMessage());
+    }
+}
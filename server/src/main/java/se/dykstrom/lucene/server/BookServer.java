@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An HTTP server that exposes the query and index services as JSON. All requests share the same services,
+ * so queries run against one long-lived searcher, and benefit from the same result cache.
+ * <p>
+ * The JDK HTTP server waits for requests on open connections with a single selector thread, so idle
+ * keep-alive connections cost no threads. Requests are handled on virtual threads if the JVM supports them,
+ * so a request that waits for I/O does not hold on to an OS thread. Otherwise, they are handled by a fixed
+ * pool of platform threads, and requests that arrive while all threads are busy wait in a queue.
+ * <p>
+ * The server does not own the services, and does not close them when it is closed.
+ */
+public class BookServer implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(BookServer.class.getName());
+
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    public BookServer(final QueryService queryService, final IndexService indexService, final ServerConfig config)
+            throws IOException {
+        requireNonNull(queryService);
+        requireNonNull(indexService);
+        this.server = HttpServer.create(new InetSocketAddress(config.host(), config.port()), config.backlog());
+        final ExecutorService virtualThreadExecutor = config.virtualThreads() ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor(config.maxThreads());
+        server.setExecutor(executor);
+        server.createContext("/books", new BooksHandler(queryService));
+        server.createContext("/references", new ReferencesHandler(queryService));
+        server.createContext("/index", new IndexHandler(indexService, queryService));
+        server.createContext("/stats", new StatsHandler(queryService));
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+        LOGGER.log(Level.INFO, "Listening on " + address() + " with "
+                + (virtualThreads ? "virtual threads" : "platform threads"));
+    }
+
+    /**
+     * Returns the address that the server listens on. If the server was configured with port 0,
+     * this is the port that was picked.
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns true if requests are handled on virtual threads.
+     */
+    public boolean virtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting requests, and waits a short while for the current requests to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task, or {@code null} if the JVM
+     * does not support virtual threads. The executor is looked up by reflection, so that the server
+     * can be built for, and run on, Java versions without virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            LOGGER.log(Level.DEBUG, "Virtual threads are not available in this JVM");
+            return null;
+        } catch (InvocationTargetException e) {
+            // Virtual threads are a preview feature that has not been enabled
+            LOGGER.log(Level.DEBUG, "Virtual threads are not enabled in this JVM", e.getCause());
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(final int threads) {
+        final var counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "http-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds books.
+ * <ul>
+ *     <li>{@code GET /books/<isbn>} returns the book with the given ISBN.</li>
+ *     <li>{@code GET /books?author=<name>} returns the books by authors with names like the given name.</li>
+ *     <li>{@code GET /books?minPages=<min>&maxPages=<max>} returns the books with a number of pages
+ *     in the given range.</li>
+ * </ul>
+ */
+class BooksHandler extends JsonHandler {
+
+    private final QueryService queryService;
+
+    BooksHandler(final QueryService queryService) {
+        this.queryService = requireNonNull(queryService);
+    }
+
+    @Override
+    protected Object handle(final Request request) throws IOException {
+        request.requireMethod("GET");
+        if (!request.path().isEmpty()) {
+            final String isbn = request.path();
+            return queryService.findBookByIsbn(isbn)
+                    .orElseThrow(() -> new HttpException(404, "no book with ISBN " + isbn));
+        } else if (request.hasParameter("author")) {
+            return queryService.findBooksByAuthor(request.requiredParameter("author"));
+        } else if (request.hasParameter("minPages") || request.hasParameter("maxPages")) {
+            final int min = request.intParameter("minPages", 0);
+            final int max = request.intParameter("maxPages", Integer.MAX_VALUE);
+            return queryService.findBooksByPagesRange(min, max);
+        } else {
+            throw new IllegalArgumentException("expected an ISBN, an author, or a page range");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Updates the index. The paths are paths on the server.
+ * <ul>
+ *     <li>{@code POST /index/book?path=<file>} indexes one book file.</li>
+ *     <li>{@code POST /index/books?dir=<dir>} replaces the index with the book files in a directory.</li>
+ *     <li>{@code POST /index/stream?file=<file>} indexes the books in an NDJSON file.</li>
+ *     <li>{@code POST /index/sync?dir=<dir>} updates the index with the changes in a directory.</li>
+ *     <li>{@code POST /index/commit} commits pending changes.</li>
+ * </ul>
+ * The query service is refreshed after each change, so that the next query sees it.
+ */
+class IndexHandler extends JsonHandler {
+
+    private final IndexService indexService;
+    private final QueryService queryService;
+
+    IndexHandler(final IndexService indexService, final QueryService queryService) {
+        this.indexService = requireNonNull(indexService);
+        this.queryService = requireNonNull(queryService);
+    }
+
+    @Override
+    protected Object handle(final Request request) throws IOException {
+        request.requireMethod("POST");
+        final Object result = switch (request.path()) {
+            case "book" -> {
+                indexService.indexBook(Path.of(request.requiredParameter("path")));
+                yield null;
+            }
+            case "books" -> indexService.indexAllBooks(Path.of(request.requiredParameter("dir")));
+            case "stream" -> indexService.indexBookStream(Path.of(request.requiredParameter("file")));
+            case "sync" -> indexService.syncDirectory(Path.of(request.requiredParameter("dir")));
+            case "commit" -> {
+                indexService.commit();
+                yield null;
+            }
+            default -> throw new HttpException(404, "unknown index operation: " + request.path());
+        };
+        queryService.refresh();
+        return result;
+    }
+}
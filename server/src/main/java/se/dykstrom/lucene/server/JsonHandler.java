@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger.Level;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.lucene.index.IndexNotFoundException;
+
+/**
+ * A handler that answers requests with JSON. Subclasses return the object to send, or {@code null} to send
+ * an empty response. Exceptions are mapped to error statuses, and sent as a JSON object with an error message.
+ * <p>
+ * Every response has a content length, so that the client can keep the connection open for the next request.
+ */
+abstract class JsonHandler implements HttpHandler {
+
+    private static final System.Logger LOGGER = System.getLogger(JsonHandler.class.getName());
+
+    static final ObjectMapper OBJECT_MAPPER = createObjectMapper();
+
+    @Override
+    public final void handle(final HttpExchange exchange) throws IOException {
+        try {
+            // Read any request body, so the connection can be reused
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+
+            int status;
+            Object response;
+            try {
+                response = handle(Request.of(exchange));
+                status = response != null ? 200 : 204;
+            } catch (HttpException e) {
+                status = e.status();
+                response = error(e);
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = error(e);
+            } catch (NoSuchFileException e) {
+                status = 400;
+                response = Map.of("error", "no such file: " + e.getFile());
+            } catch (IndexNotFoundException e) {
+                status = 503;
+                response = Map.of("error", "the index has not been created");
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to handle " + exchange.getRequestMethod() + " "
+                        + exchange.getRequestURI(), e);
+                status = 500;
+                response = error(e);
+            }
+            send(exchange, status, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles the request, and returns the object to send as JSON, or {@code null} to send no content.
+     */
+    protected abstract Object handle(Request request) throws IOException;
+
+    private static void send(final HttpExchange exchange, final int status, final Object response) throws IOException {
+        if (response == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            final byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> error(final Exception e) {
+        return Map.of("error", String.valueOf(e.getMessage()));
+    }
+
+    /**
+     * Returns an object mapper that writes paths as strings, and durations as milliseconds.
+     */
+    private static ObjectMapper createObjectMapper() {
+        final var module = new SimpleModule();
+        module.addSerializer(Path.class, ToStringSerializer.instance);
+        module.addSerializer(Duration.class, new StdSerializer<>(Duration.class) {
+            @Override
+            public void serialize(final Duration value, final JsonGenerator generator, final SerializerProvider provider)
+                    throws IOException {
+                generator.writeNumber(value.toMillis());
+            }
+        });
+        return new ObjectMapper().registerModule(module);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds one page of book references.
+ * <ul>
+ *     <li>{@code GET /references?q=<query>} finds references with a query in query parser syntax.</li>
+ *     <li>{@code GET /references?author=<author>&title=<title>&description=<word>&minPages=<min>&maxPages=<max>}
+ *     finds references that match all the given fields.</li>
+ * </ul>
+ * Both accept the paging parameters {@code size}, {@code offset}, {@code cursor}, {@code sort} and
+ * {@code facets}. The sort is the name of a sort key, optionally preceded by a minus sign for descending order,
+ * for example {@code -pages}. To get the next page, pass the cursor of the previous page.
+ */
+class ReferencesHandler extends JsonHandler {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final Set<String> FIELD_PARAMETERS = Set.of("author", "title", "description", "minPages", "maxPages");
+
+    private final QueryService queryService;
+
+    ReferencesHandler(final QueryService queryService) {
+        this.queryService = requireNonNull(queryService);
+    }
+
+    @Override
+    protected Object handle(final Request request) throws IOException {
+        request.requireMethod("GET");
+        final PageRequest page = createPageRequest(request);
+        if (request.hasParameter("q")) {
+            return queryService.findReferencesByQuery(request.requiredParameter("q"), page);
+        } else if (request.hasAnyParameter(FIELD_PARAMETERS)) {
+            return queryService.findReferencesByFields(
+                    request.parameter("author", ""),
+                    request.parameter("title", ""),
+                    request.parameter("description", ""),
+                    request.intParameter("minPages", 0),
+                    request.intParameter("maxPages", 0),
+                    page
+            );
+        } else {
+            throw new IllegalArgumentException("expected a query or at least one field");
+        }
+    }
+
+    private static PageRequest createPageRequest(final Request request) {
+        final int size = request.intParameter("size", DEFAULT_PAGE_SIZE);
+        if (size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page size must be at most " + MAX_PAGE_SIZE + ": " + size);
+        }
+        final String cursor = request.parameter("cursor", null);
+        final boolean facets = Boolean.parseBoolean(request.parameter("facets", "false"));
+        return new PageRequest(size, request.intParameter("offset", 0), cursor, parseSort(request), facets);
+    }
+
+    private static BookSort parseSort(final Request request) {
+        final String sort = request.parameter("sort", "");
+        if (sort.isEmpty()) {
+            return BookSort.RELEVANCE;
+        }
+        final boolean descending = sort.startsWith("-");
+        final String key = (descending ? sort.substring(1) : sort).toUpperCase(Locale.ROOT);
+        // Throws IllegalArgumentException for unknown keys
+        return new BookSort(BookSort.Key.valueOf(key), descending);
+    }
+}
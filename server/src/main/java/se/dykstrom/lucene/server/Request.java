@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An HTTP request, as seen by a {@link JsonHandler}.
+ */
+final class Request {
+
+    private final String method;
+    private final String path;
+    private final Map<String, String> parameters;
+
+    private Request(final String method, final String path, final Map<String, String> parameters) {
+        this.method = requireNonNull(method);
+        this.path = requireNonNull(path);
+        this.parameters = requireNonNull(parameters);
+    }
+
+    /**
+     * Creates a request from the exchange. The path is relative to the context of the handler,
+     * without leading or trailing slashes.
+     */
+    static Request of(final HttpExchange exchange) {
+        final String contextPath = exchange.getHttpContext().getPath();
+        final String fullPath = exchange.getRequestURI().getPath();
+        final String path = stripSlashes(fullPath.substring(Math.min(contextPath.length(), fullPath.length())));
+        return new Request(exchange.getRequestMethod(), path, parseQuery(exchange.getRequestURI().getRawQuery()));
+    }
+
+    String method() {
+        return method;
+    }
+
+    String path() {
+        return path;
+    }
+
+    /**
+     * Makes sure the request uses the given method.
+     *
+     * @throws HttpException With status 405 if it does not.
+     */
+    void requireMethod(final String expected) {
+        if (!method.equals(expected)) {
+            throw new HttpException(405, "method not allowed: " + method);
+        }
+    }
+
+    boolean hasParameter(final String name) {
+        return parameters.containsKey(name);
+    }
+
+    /**
+     * Returns true if the request has any of the given parameters.
+     */
+    boolean hasAnyParameter(final Set<String> names) {
+        return names.stream().anyMatch(parameters::containsKey);
+    }
+
+    /**
+     * Returns the value of the parameter, or the default value if there is no such parameter.
+     */
+    String parameter(final String name, final String defaultValue) {
+        return parameters.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Returns the value of the parameter.
+     *
+     * @throws IllegalArgumentException If there is no such parameter.
+     */
+    String requiredParameter(final String name) {
+        final String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the parameter as an int, or the default value if there is no such parameter.
+     *
+     * @throws IllegalArgumentException If the value is not an int.
+     */
+    int intParameter(final String name, final int defaultValue) {
+        final String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (final String pair : query.split("&")) {
+                if (!pair.isEmpty()) {
+                    final int index = pair.indexOf('=');
+                    final String name = index >= 0 ? pair.substring(0, index) : pair;
+                    final String value = index >= 0 ? pair.substring(index + 1) : "";
+                    parameters.putIfAbsent(decode(name), decode(value));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(final String text) {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    private static String stripSlashes(final String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) == '/') {
+            end--;
+        }
+        return text.substring(start, end);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration for a {@link BookServer}.
+ *
+ * @param host The host name or address to listen on.
+ * @param port The port to listen on, or 0 to pick a free port.
+ * @param backlog The maximum number of connections waiting to be accepted.
+ * @param virtualThreads True if requests should be handled on virtual threads, if the JVM supports them.
+ * @param maxThreads The number of threads that handle requests if virtual threads are not used.
+ */
+public record ServerConfig(String host, int port, int backlog, boolean virtualThreads, int maxThreads) {
+
+    /**
+     * Listens on port 8080 of the loopback interface, since the server has no authentication.
+     */
+    public static final ServerConfig DEFAULT = new ServerConfig("localhost", 8080, 1024, true, 200);
+
+    public ServerConfig {
+        requireNonNull(host);
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("invalid port: " + port);
+        }
+        if (backlog < 0) {
+            throw new IllegalArgumentException("backlog must not be negative: " + backlog);
+        }
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("max threads must be positive: " + maxThreads);
+        }
+    }
+
+    public ServerConfig withHost(final String host) {
+        return new ServerConfig(host, port, backlog, virtualThreads, maxThreads);
+    }
+
+    public ServerConfig withPort(final int port) {
+        return new ServerConfig(host, port, backlog, virtualThreads, maxThreads);
+    }
+
+    public ServerConfig withBacklog(final int backlog) {
+        return new ServerConfig(host, port, backlog, virtualThreads, maxThreads);
+    }
+
+    public ServerConfig withVirtualThreads(final boolean virtualThreads) {
+        return new ServerConfig(host, port, backlog, virtualThreads, maxThreads);
+    }
+
+    public ServerConfig withMaxThreads(final int maxThreads) {
+        return new ServerConfig(host, port, backlog, virtualThreads, maxThreads);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexConfig;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.IndexWarmer;
+import se.dykstrom.lucene.service.JmxMetrics;
+import se.dykstrom.lucene.service.QueryConfig;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+import se.dykstrom.lucene.service.WarmUpConfig;
+
+/**
+ * Starts a {@link BookServer}, and runs until the JVM is shut down. Stopping the JVM closes the server
+ * and the services. The server is configured with system properties:
+ * <ul>
+ *     <li>{@code index.path} - the index directory, by default {@code data/index}</li>
+ *     <li>{@code index.shards} - the number of shards that the index is divided into</li>
+ *     <li>{@code server.host} - the host name or address to listen on</li>
+ *     <li>{@code server.port} - the port to listen on</li>
+ *     <li>{@code server.virtual.threads} - false to handle requests on platform threads</li>
+ *     <li>{@code server.threads} - the number of platform threads</li>
+ * </ul>
+ */
+public final class ServerMain {
+
+    private static final System.Logger LOGGER = System.getLogger(ServerMain.class.getName());
+
+    // The JDK HTTP server closes idle keep-alive connections beyond this number
+    private static final String MAX_IDLE_CONNECTIONS = "sun.net.httpserver.maxIdleConnections";
+
+    private ServerMain() { }
+
+    public static void main(final String[] args) throws IOException {
+        if (System.getProperty(MAX_IDLE_CONNECTIONS) == null) {
+            System.setProperty(MAX_IDLE_CONNECTIONS, "10000");
+        }
+
+        final Path indexPath = Path.of(System.getProperty("index.path", "data/index"));
+        final ServerConfig defaults = ServerConfig.DEFAULT;
+        final ServerConfig config = defaults
+                .withHost(System.getProperty("server.host", defaults.host()))
+                .withPort(Integer.getInteger("server.port", defaults.port()))
+                .withVirtualThreads(Boolean.parseBoolean(System.getProperty("server.virtual.threads", "true")))
+                .withMaxThreads(Integer.getInteger("server.threads", defaults.maxThreads()));
+
+        final int shards = Integer.getInteger("index.shards", 1);
+        final var queryService = new QueryServiceImpl(indexPath, new FileServiceImpl(),
+                QueryConfig.DEFAULT.withShards(shards));
+        final var indexService = new IndexServiceImpl(indexPath, new FileServiceImpl(),
+                IndexConfig.DEFAULT.withShards(shards));
+        final var queryMetrics = JmxMetrics.register("server", queryService);
+        final var indexMetrics = JmxMetrics.register("server", indexService);
+        final var server = new BookServer(queryService, indexService, config);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                queryMetrics.close();
+                indexMetrics.close();
+                queryService.close();
+                indexService.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close services", e);
+            }
+        }, "server-shutdown"));
+
+        new IndexWarmer(indexPath, queryService, WarmUpConfig.DEFAULT).start();
+        // The server keeps the JVM running until it is shut down
+        server.start();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import se.dykstrom.lucene.service.QueryService;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Returns statistics from the result cache of the query service: {@code GET /stats}.
+ */
+class StatsHandler extends JsonHandler {
+
+    private final QueryService queryService;
+
+    StatsHandler(final QueryService queryService) {
+        this.queryService = requireNonNull(queryService);
+    }
+
+    @Override
+    protected Object handle(final Request request) {
+        request.requireMethod("GET");
+        return queryService.cacheStats();
+    }
+}
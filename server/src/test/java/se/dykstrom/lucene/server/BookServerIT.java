@@ -0,0 +1,212 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.service.FileServiceImpl;
+import se.dykstrom.lucene.service.IndexService;
+import se.dykstrom.lucene.service.IndexServiceImpl;
+import se.dykstrom.lucene.service.QueryService;
+import se.dykstrom.lucene.service.QueryServiceImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookServerIT {
+
+    private static final Book BOOK_0 = new Book("978-0", "Den gamle och havet", "Ernest Hemingway", 125, "en fiskare");
+    private static final Book BOOK_1 = new Book("978-1", "Hemsöborna", "August Strindberg", 225, "en skärgård");
+    private static final Book BOOK_2 = new Book("978-2", "Röda rummet", "August Strindberg", 320, "en stad");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private Path bookDir;
+    private Path indexPath;
+    private QueryService queryService;
+    private IndexService indexService;
+    private BookServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book0.json").toFile(), BOOK_0);
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book1.json").toFile(), BOOK_1);
+        indexService = new IndexServiceImpl(indexPath, new FileServiceImpl());
+        indexService.indexAllBooks(bookDir);
+        queryService = new QueryServiceImpl(indexPath);
+        server = new BookServer(queryService, indexService, ServerConfig.DEFAULT.withPort(0));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        queryService.close();
+        indexService.close();
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldFindBookByIsbn() throws Exception {
+        // When
+        final var response = get("/books/978-0");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(BOOK_0, OBJECT_MAPPER.readValue(response.body(), Book.class));
+    }
+
+    @Test
+    void shouldNotFindUnknownIsbn() throws Exception {
+        // When
+        final var response = get("/books/978-9");
+
+        // Then
+        assertEquals(404, response.statusCode());
+        assertEquals("no book with ISBN 978-9", OBJECT_MAPPER.readTree(response.body()).get("error").asText());
+    }
+
+    @Test
+    void shouldFindBooksByAuthor() throws Exception {
+        // When
+        final var response = get("/books?author=" + encode("Strindberg"));
+
+        // Then
+        assertEquals(200, response.statusCode());
+        final JsonNode books = OBJECT_MAPPER.readTree(response.body());
+        assertEquals(1, books.size());
+        assertEquals("978-1", books.get(0).get("isbn").asText());
+    }
+
+    @Test
+    void shouldFindReferencePagesByQuery() throws Exception {
+        // When
+        final var response = get("/references?q=" + encode("author:hemingway OR author:strindberg")
+                + "&size=1&sort=-pages&facets=true");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        final JsonNode page = OBJECT_MAPPER.readTree(response.body());
+        assertEquals(2, page.get("totalHits").asLong());
+        assertEquals(1, page.get("references").size());
+        assertEquals("978-1", page.get("references").get(0).get("isbn").asText());
+        assertTrue(page.get("references").get(0).get("path").asText().endsWith("book1.json"));
+        assertEquals(2, page.get("facets").get("authors").size());
+
+        // When
+        final var nextResponse = get("/references?q=" + encode("author:hemingway OR author:strindberg")
+                + "&size=1&sort=-pages&cursor=" + encode(page.get("nextCursor").asText()));
+
+        // Then
+        final JsonNode nextPage = OBJECT_MAPPER.readTree(nextResponse.body());
+        assertEquals("978-0", nextPage.get("references").get(0).get("isbn").asText());
+        assertTrue(nextPage.get("nextCursor").isNull());
+    }
+
+    @Test
+    void shouldFindReferencePagesByFields() throws Exception {
+        // When
+        final var response = get("/references?author=strindberg&minPages=200&maxPages=300");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        final JsonNode page = OBJECT_MAPPER.readTree(response.body());
+        assertEquals(1, page.get("totalHits").asLong());
+        assertEquals("Hemsöborna", page.get("references").get(0).get("title").asText());
+    }
+
+    @Test
+    void shouldRejectInvalidRequests() throws Exception {
+        assertEquals(400, get("/references?q=" + encode("title:(")).statusCode());
+        assertEquals(400, get("/references?q=x&size=x").statusCode());
+        assertEquals(400, get("/references?q=x&sort=color").statusCode());
+        assertEquals(400, get("/references").statusCode());
+        assertEquals(400, get("/books").statusCode());
+        assertEquals(405, get("/index/commit").statusCode());
+        assertEquals(404, post("/index/rebuild").statusCode());
+    }
+
+    @Test
+    void shouldFindBookAfterSync() throws Exception {
+        // Given
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book2.json").toFile(), BOOK_2);
+
+        // When
+        final var response = post("/index/sync?dir=" + encode(bookDir.toString()));
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals(1, OBJECT_MAPPER.readTree(response.body()).get("added").asLong());
+        assertEquals(200, get("/books/978-2").statusCode());
+    }
+
+    @Test
+    void shouldHandleConcurrentRequests() throws Exception {
+        // When
+        final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final var request = HttpRequest.newBuilder(uri("/books/978-" + (i % 2))).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        // Then
+        for (final var response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+        assertTrue(queryService.cacheStats().hits() > 0);
+    }
+
+    private HttpResponse<String> get(final String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(final String path) throws IOException, InterruptedException {
+        final var request = HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + server.address().getPort() + path);
+    }
+
+    private static String encode(final String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+}
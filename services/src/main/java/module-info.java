@@ -1,7 +1,12 @@
 module se.dykstrom.lucene.services {
     requires com.fasterxml.jackson.databind;
+    requires transitive java.management;
+    requires org.apache.lucene.analysis.common;
     requires org.apache.lucene.core;
+    requires org.apache.lucene.facet;
     requires org.apache.lucene.queryparser;
+    requires org.apache.lucene.sandbox;
+    requires org.apache.lucene.suggest;
 
     opens se.dykstrom.lucene.model to com.fasterxml.jackson.databind;
 
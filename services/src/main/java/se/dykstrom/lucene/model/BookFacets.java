@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+import java.util.List;
+
+/**
+ * Facet counts for all hits of a query, that can be used to narrow down the search.
+ *
+ * @param authors The most common authors among the hits, most common first.
+ * @param pageRanges The number of hits in each page range, in ascending order.
+ */
+public record BookFacets(List<FacetCount> authors, List<PageRangeCount> pageRanges) {
+
+    public static final BookFacets EMPTY = new BookFacets(List.of(), List.of());
+
+    public BookFacets {
+        authors = List.copyOf(authors);
+        pageRanges = List.copyOf(pageRanges);
+    }
+}
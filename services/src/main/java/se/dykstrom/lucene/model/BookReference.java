@@ -18,4 +18,13 @@ package se.dykstrom.lucene.model;
 
 import java.nio.file.Path;
 
-public record BookReference(String author, String title, Path path, float score) { }
+/**
+ * A reference to a book found by a query.
+ *
+ * @param isbn The ISBN of the book.
+ * @param author The author of the book.
+ * @param title The title of the book.
+ * @param path The path to the book file, or {@code null} if the book was not indexed from a file.
+ * @param score The score of the hit.
+ */
+public record BookReference(String isbn, String author, String title, Path path, float score) { }
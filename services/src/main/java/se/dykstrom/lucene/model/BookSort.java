@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Specifies the order of search results.
+ *
+ * @param key The key to sort on.
+ * @param descending True if the results should be sorted in descending order. Results sorted on relevance
+ *                   are in best match first order, unless this is true.
+ */
+public record BookSort(Key key, boolean descending) {
+
+    /**
+     * Sorts the best matching results first. This is the default order.
+     */
+    public static final BookSort RELEVANCE = new BookSort(Key.RELEVANCE, false);
+
+    /**
+     * The keys that results can be sorted on.
+     */
+    public enum Key {
+        RELEVANCE,
+        AUTHOR,
+        TITLE,
+        PAGES
+    }
+
+    public BookSort {
+        requireNonNull(key);
+    }
+
+    public static BookSort ascending(final Key key) {
+        return new BookSort(key, false);
+    }
+
+    public static BookSort descending(final Key key) {
+        return new BookSort(key, true);
+    }
+}
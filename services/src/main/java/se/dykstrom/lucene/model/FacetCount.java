@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The number of hits that have a certain field value.
+ *
+ * @param value The field value.
+ * @param count The number of hits with this value.
+ */
+public record FacetCount(String value, long count) {
+
+    public FacetCount {
+        requireNonNull(value);
+    }
+}
@@ -19,7 +19,10 @@ package se.dykstrom.lucene.model;
 public enum FieldName {
 
     AUTHOR,
+    AUTHOR_GRAMS,
     DESCRIPTION,
+    FILE_MODIFIED,
+    FILE_SIZE,
     ISBN,
     PAGES,
     PATH,
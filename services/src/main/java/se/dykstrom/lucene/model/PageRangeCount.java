@@ -0,0 +1,26 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+/**
+ * The number of hits with a number of pages in a certain range.
+ *
+ * @param min The minimum number of pages, inclusive.
+ * @param max The maximum number of pages, inclusive.
+ * @param count The number of hits in this range.
+ */
+public record PageRangeCount(int min, int max, long count) { }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A request for one page of search results.
+ *
+ * @param size The maximum number of results on the page.
+ * @param offset The number of results to skip before the page starts, counted from the cursor if there is one.
+ *               Skipping results is slower than following cursors, but makes it possible to jump to any page.
+ * @param cursor The cursor returned with the previous page, or {@code null} to request the first page.
+ * @param sort The order of the results. All pages of the same search must use the same order.
+ * @param facets True if facet counts should be computed for all hits, in the same pass as the page is collected.
+ */
+public record PageRequest(int size, int offset, String cursor, BookSort sort, boolean facets) {
+
+    public PageRequest {
+        if (size <= 0) {
+            throw new IllegalArgumentException("page size must be positive: " + size);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative: " + offset);
+        }
+        requireNonNull(sort);
+    }
+
+    /**
+     * Returns a request for the first page of results, ordered by relevance.
+     */
+    public static PageRequest first(final int size) {
+        return first(size, BookSort.RELEVANCE);
+    }
+
+    /**
+     * Returns a request for the first page of results, in the given order.
+     */
+    public static PageRequest first(final int size, final BookSort sort) {
+        return new PageRequest(size, 0, null, sort, false);
+    }
+
+    /**
+     * Returns a request for the page after the page identified by the given cursor, ordered by relevance.
+     */
+    public static PageRequest after(final String cursor, final int size) {
+        return new PageRequest(size, 0, cursor, BookSort.RELEVANCE, false);
+    }
+
+    /**
+     * Returns a request for the page after the page identified by the given cursor,
+     * with the same size, order, and facets as this request, and no offset.
+     */
+    public PageRequest next(final String cursor) {
+        return new PageRequest(size, 0, requireNonNull(cursor), sort, facets);
+    }
+
+    /**
+     * Returns a copy of this request that skips the given number of results.
+     */
+    public PageRequest withOffset(final int offset) {
+        return new PageRequest(size, offset, cursor, sort, facets);
+    }
+
+    /**
+     * Returns a copy of this request that also asks for facet counts.
+     */
+    public PageRequest withFacets() {
+        return new PageRequest(size, offset, cursor, sort, true);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.model;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One page of book references.
+ *
+ * @param references The references on this page.
+ * @param totalHits The total number of hits for the query, on all pages.
+ * @param nextCursor An opaque cursor that identifies the next page, or {@code null} if this is the last page.
+ * @param facets The facet counts for all hits, or {@link BookFacets#EMPTY} if they were not requested.
+ */
+public record ReferencePage(List<BookReference> references, long totalHits, String nextCursor, BookFacets facets) {
+
+    public ReferencePage {
+        references = List.copyOf(references);
+        requireNonNull(facets);
+    }
+
+    public ReferencePage(final List<BookReference> references, final long totalHits, final String nextCursor) {
+        this(references, totalHits, nextCursor, BookFacets.EMPTY);
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
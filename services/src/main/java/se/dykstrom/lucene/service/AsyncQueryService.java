@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+
+/**
+ * A non-blocking variant of {@link QueryService}. Each finder starts the search in the background,
+ * and returns a future that completes with the result, or exceptionally with the exception thrown
+ * by the search.
+ */
+public interface AsyncQueryService extends Closeable {
+
+    CompletableFuture<Optional<Book>> findBookByIsbn(final String isbn);
+
+    CompletableFuture<List<Book>> findBooksByAuthor(final String author);
+
+    CompletableFuture<List<Book>> findBooksByPagesRange(final int min, final int max);
+
+    CompletableFuture<List<BookReference>> findReferencesByAuthor(final String author);
+
+    CompletableFuture<List<BookReference>> findReferencesByDescription(final String description);
+
+    CompletableFuture<List<BookReference>> findReferencesByFields(final String author,
+                                                                  final String title,
+                                                                  final String description,
+                                                                  final int minPages,
+                                                                  final int maxPages);
+
+    /**
+     * Returns one page of the references found by {@link #findReferencesByFields(String, String, String, int, int)}.
+     * Cancelling the returned future also stops the search.
+     */
+    CompletableFuture<ReferencePage> findReferencesByFields(final String author,
+                                                            final String title,
+                                                            final String description,
+                                                            final int minPages,
+                                                            final int maxPages,
+                                                            final PageRequest page);
+
+    CompletableFuture<List<BookReference>> findReferencesByQuery(final String text);
+
+    /**
+     * Returns one page of the references found by {@link #findReferencesByQuery(String)}.
+     * Cancelling the returned future also stops the search.
+     */
+    CompletableFuture<ReferencePage> findReferencesByQuery(final String text, final PageRequest page);
+}
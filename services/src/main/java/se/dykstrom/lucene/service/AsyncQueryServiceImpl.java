@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An async query service that runs the searches of a blocking {@link QueryService} on a bounded pool
+ * of threads. The number of threads limits the number of concurrent searches. The searches share
+ * the searcher and the result cache of the blocking query service, which is closed with this service.
+ */
+public class AsyncQueryServiceImpl implements AsyncQueryService {
+
+    private static final System.Logger LOGGER = System.getLogger(AsyncQueryServiceImpl.class.getName());
+
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final QueryService queryService;
+    private final ExecutorService executor;
+    private final Set<CompletableFuture<?>> pendingSearches = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates an async query service that runs at most as many concurrent searches as there are processors.
+     */
+    public AsyncQueryServiceImpl(final QueryService queryService) {
+        this(queryService, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AsyncQueryServiceImpl(final QueryService queryService, final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.queryService = requireNonNull(queryService);
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("async-query"));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> findBookByIsbn(final String isbn) {
+        return supplyAsync(() -> queryService.findBookByIsbn(isbn));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findBooksByAuthor(final String author) {
+        return supplyAsync(() -> queryService.findBooksByAuthor(author));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findBooksByPagesRange(final int min, final int max) {
+        return supplyAsync(() -> queryService.findBooksByPagesRange(min, max));
+    }
+
+    @Override
+    public CompletableFuture<List<BookReference>> findReferencesByAuthor(final String author) {
+        return supplyAsync(() -> queryService.findReferencesByAuthor(author));
+    }
+
+    @Override
+    public CompletableFuture<List<BookReference>> findReferencesByDescription(final String description) {
+        return supplyAsync(() -> queryService.findReferencesByDescription(description));
+    }
+
+    @Override
+    public CompletableFuture<List<BookReference>> findReferencesByFields(final String author,
+                                                                         final String title,
+                                                                         final String description,
+                                                                         final int minPages,
+                                                                         final int maxPages) {
+        return supplyAsync(() -> queryService.findReferencesByFields(author, title, description, minPages, maxPages));
+    }
+
+    @Override
+    public CompletableFuture<ReferencePage> findReferencesByFields(final String author,
+                                                                   final String title,
+                                                                   final String description,
+                                                                   final int minPages,
+                                                                   final int maxPages,
+                                                                   final PageRequest page) {
+        return supplyCancellableAsync(cancellation -> queryService.findReferencesByFields(
+                author, title, description, minPages, maxPages, page, cancellation
+        ));
+    }
+
+    @Override
+    public CompletableFuture<List<BookReference>> findReferencesByQuery(final String text) {
+        return supplyAsync(() -> queryService.findReferencesByQuery(text));
+    }
+
+    @Override
+    public CompletableFuture<ReferencePage> findReferencesByQuery(final String text, final PageRequest page) {
+        return supplyCancellableAsync(cancellation -> queryService.findReferencesByQuery(text, page, cancellation));
+    }
+
+    /**
+     * Closes the executor, waiting for running and queued searches to finish, and then the blocking
+     * query service. Searches that have not finished within 30 seconds are cancelled.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOGGER.log(Level.WARNING, "Cancelling " + pendingSearches.size() + " searches that did not finish");
+                cancelPendingSearches();
+            }
+        } catch (InterruptedException e) {
+            cancelPendingSearches();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for searches to finish");
+        } finally {
+            queryService.close();
+        }
+    }
+
+    private void cancelPendingSearches() {
+        // Cancelling the futures also signals cancellable searches to stop
+        pendingSearches.forEach(future -> future.cancel(true));
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(final IOSupplier<T> supplier) {
+        final CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return supplier.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        pendingSearches.add(future);
+        future.whenComplete((result, exception) -> pendingSearches.remove(future));
+        return future;
+    }
+
+    /**
+     * Runs a search that can be stopped with a cancellation signal, and cancels the signal
+     * if the returned future is cancelled.
+     */
+    private <T> CompletableFuture<T> supplyCancellableAsync(final CancellableSearch<T> search) {
+        final var cancellation = new Cancellation();
+        final CompletableFuture<T> future = supplyAsync(() -> search.apply(cancellation));
+        future.whenComplete((result, exception) -> {
+            if (exception instanceof CancellationException) {
+                cancellation.cancel();
+            }
+        });
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface CancellableSearch<T> {
+        T apply(final Cancellation cancellation) throws IOException;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import se.dykstrom.lucene.model.FieldName;
+
+/**
+ * Creates the analyzers used to index and search books. Indexing and searching must use the same analyzers.
+ */
+final class BookAnalyzers {
+
+    /** The length of the n-grams that author names are split into. */
+    static final int AUTHOR_GRAM_SIZE = 3;
+
+    private static final Analyzer AUTHOR_WORD_ANALYZER = authorWordAnalyzer();
+
+    private BookAnalyzers() { }
+
+    /**
+     * Returns an analyzer that analyzes the author n-gram field with {@link #authorGramAnalyzer()},
+     * and all other fields with a standard analyzer.
+     */
+    static Analyzer create() {
+        return new PerFieldAnalyzerWrapper(
+                new StandardAnalyzer(),
+                Map.of(FieldName.AUTHOR_GRAMS.value(), authorGramAnalyzer())
+        );
+    }
+
+    /**
+     * Returns an analyzer that splits each word of an author name into lower case n-grams, with accents
+     * and other diacritics removed. Two names that are spelled almost the same share most of their n-grams,
+     * so approximate matching becomes a matter of looking up n-grams as ordinary terms. The whole words
+     * are also kept, so that short words, which a single typo may change all n-grams of, can be matched
+     * by a fuzzy query on the same field.
+     */
+    static Analyzer authorGramAnalyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(final String fieldName) {
+                final var tokenizer = new StandardTokenizer();
+                TokenStream stream = new LowerCaseFilter(tokenizer);
+                stream = new ASCIIFoldingFilter(stream);
+                stream = new NGramTokenFilter(stream, AUTHOR_GRAM_SIZE, AUTHOR_GRAM_SIZE, true);
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+
+            @Override
+            protected TokenStream normalize(final String fieldName, final TokenStream in) {
+                return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+            }
+        };
+    }
+
+    /**
+     * Splits the given author name into lower case words, with accents and other diacritics removed,
+     * the same way that {@link #authorGramAnalyzer()} does before it splits the words into n-grams.
+     */
+    static List<String> authorWords(final String name) {
+        final List<String> words = new ArrayList<>();
+        try (TokenStream stream = AUTHOR_WORD_ANALYZER.tokenStream(FieldName.AUTHOR.value(), name)) {
+            final CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                words.add(termAttribute.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            // Analyzing a string does no I/O
+            throw new UncheckedIOException(e);
+        }
+        return words;
+    }
+
+    private static Analyzer authorWordAnalyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(final String fieldName) {
+                final var tokenizer = new StandardTokenizer();
+                return new TokenStreamComponents(tokenizer, new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer)));
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * Defines where the complete book records are stored.
+ */
+public enum BookStorage {
+
+    /**
+     * The index stores the complete book records, compressed. Queries for books never read the book files.
+     */
+    INDEX,
+
+    /**
+     * The index stores only the fields needed for book references. Queries for books read the book files.
+     * This keeps the index small.
+     */
+    FILE
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * Statistics from the result cache of a query service.
+ *
+ * @param hits The number of lookups that were answered from the cache.
+ * @param misses The number of lookups that had to search the index.
+ * @param size The number of results currently in the cache.
+ */
+public record CacheStats(long hits, long misses, int size) {
+
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0);
+
+    public double hitRate() {
+        final long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0.0;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A collector that stops the search by throwing a {@link java.util.concurrent.CancellationException}
+ * when the given cancellation signal is cancelled. The signal is checked for each segment,
+ * and for every {@link #CHECK_INTERVAL} collected hits within a segment.
+ */
+final class CancellableCollector<C extends Collector> extends FilterCollector {
+
+    private static final int CHECK_INTERVAL = 256;
+
+    private final C collector;
+    private final Cancellation cancellation;
+
+    CancellableCollector(final C collector, final Cancellation cancellation) {
+        super(collector);
+        this.collector = collector;
+        this.cancellation = requireNonNull(cancellation);
+    }
+
+    /**
+     * Returns the wrapped collector.
+     */
+    C collector() {
+        return collector;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+        cancellation.throwIfCancelled();
+        return new FilterLeafCollector(super.getLeafCollector(context)) {
+            private int collected;
+
+            @Override
+            public void collect(final int doc) throws IOException {
+                if (++collected % CHECK_INTERVAL == 0) {
+                    cancellation.throwIfCancelled();
+                }
+                super.collect(doc);
+            }
+        };
+    }
+}
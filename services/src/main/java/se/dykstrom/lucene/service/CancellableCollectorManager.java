@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A collector manager that wraps each collector in a {@link CancellableCollector}, so that
+ * a search that collects the slices of the index in parallel can be cancelled too.
+ */
+final class CancellableCollectorManager<C extends Collector, T>
+        implements CollectorManager<CancellableCollector<C>, T> {
+
+    private final CollectorManager<C, T> manager;
+    private final Cancellation cancellation;
+
+    CancellableCollectorManager(final CollectorManager<C, T> manager, final Cancellation cancellation) {
+        this.manager = requireNonNull(manager);
+        this.cancellation = requireNonNull(cancellation);
+    }
+
+    @Override
+    public CancellableCollector<C> newCollector() throws IOException {
+        return new CancellableCollector<>(manager.newCollector(), cancellation);
+    }
+
+    @Override
+    public T reduce(final Collection<CancellableCollector<C>> collectors) throws IOException {
+        cancellation.throwIfCancelled();
+        final List<C> wrappedCollectors = new ArrayList<>(collectors.size());
+        for (final CancellableCollector<C> collector : collectors) {
+            wrappedCollectors.add(collector.collector());
+        }
+        return manager.reduce(wrappedCollectors);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A signal that a search should stop. The search checks the signal while it collects hits and
+ * loads documents, and throws a {@link CancellationException} as soon as it sees that the signal
+ * has been cancelled. Cancelling a search never interrupts the searching thread, since an interrupt
+ * may close the file channels of the index directory.
+ */
+public final class Cancellation {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the searches that use this signal.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a {@link CancellationException} if this signal has been cancelled.
+     */
+    void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("search was cancelled");
+        }
+    }
+}
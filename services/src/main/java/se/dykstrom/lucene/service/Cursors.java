@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes and decodes the opaque cursors used for paging. A cursor identifies the last hit on a page,
+ * and is only meaningful for the same query and sort order. If the index changes between two pages,
+ * the next page may skip or repeat some hits.
+ * <p>
+ * A cursor for a sorted search also contains the sort values of the last hit, so that the next page
+ * can continue after them.
+ */
+final class Cursors {
+
+    private static final byte VERSION = 2;
+
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_BYTES = 'B';
+    private static final byte TYPE_NULL = 'N';
+
+    private Cursors() { }
+
+    static String encode(final ScoreDoc scoreDoc) {
+        final Object[] fields = scoreDoc instanceof FieldDoc fieldDoc ? fieldDoc.fields : new Object[0];
+        int length = Byte.BYTES + Integer.BYTES + Float.BYTES + Integer.BYTES;
+        for (final Object field : fields) {
+            length += Byte.BYTES + (field instanceof BytesRef bytes ? Integer.BYTES + bytes.length : Integer.BYTES);
+        }
+
+        final var buffer = ByteBuffer.allocate(length);
+        buffer.put(VERSION);
+        buffer.putInt(scoreDoc.doc);
+        buffer.putFloat(scoreDoc.score);
+        buffer.putInt(fields.length);
+        for (final Object field : fields) {
+            if (field instanceof Integer value) {
+                buffer.put(TYPE_INT).putInt(value);
+            } else if (field instanceof Float value) {
+                buffer.put(TYPE_FLOAT).putFloat(value);
+            } else if (field instanceof BytesRef value) {
+                buffer.put(TYPE_BYTES).putInt(value.length).put(value.bytes, value.offset, value.length);
+            } else if (field == null) {
+                buffer.put(TYPE_NULL).putInt(0);
+            } else {
+                throw new IllegalArgumentException("unsupported sort value: " + field);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Decodes the cursor, and checks that it was created by a search with the given sort order.
+     * Returns a {@link FieldDoc} if the sort order is given, and a plain {@link ScoreDoc} otherwise.
+     */
+    static ScoreDoc decode(final String cursor, final Sort sort) {
+        try {
+            final var buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            if (buffer.get() != VERSION) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+            final int doc = buffer.getInt();
+            final float score = buffer.getFloat();
+            final int count = buffer.getInt();
+            final SortField[] sortFields = sort != null ? sort.getSort() : new SortField[0];
+            if (count != sortFields.length) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+
+            final Object[] fields = new Object[count];
+            for (int i = 0; i < count; i++) {
+                fields[i] = decodeValue(buffer, sortFields[i], cursor);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+            return sort != null ? new FieldDoc(doc, score, fields) : new ScoreDoc(doc, score);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+    }
+
+    private static Object decodeValue(final ByteBuffer buffer, final SortField sortField, final String cursor) {
+        final byte type = buffer.get();
+        final Object value = switch (type) {
+            case TYPE_INT -> buffer.getInt();
+            case TYPE_FLOAT -> buffer.getFloat();
+            case TYPE_BYTES -> {
+                // The length comes from the client, so check it before allocating anything
+                final int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("invalid cursor: " + cursor);
+                }
+                final var bytes = new byte[length];
+                buffer.get(bytes);
+                yield new BytesRef(bytes);
+            }
+            case TYPE_NULL -> {
+                buffer.getInt();
+                yield null;
+            }
+            default -> throw new IllegalArgumentException("invalid cursor: " + cursor);
+        };
+        final boolean valid = switch (sortField.getType()) {
+            case INT -> type == TYPE_INT;
+            case SCORE -> type == TYPE_FLOAT;
+            case STRING -> type == TYPE_BYTES || type == TYPE_NULL;
+            default -> false;
+        };
+        if (!valid) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+
+/**
+ * Defines how the index files are accessed.
+ */
+public enum DirectoryType {
+
+    /**
+     * Lets Lucene choose the best directory implementation for the platform. On 64-bit platforms
+     * this is the same as {@link #MMAP}.
+     */
+    AUTO,
+
+    /**
+     * Memory maps the index files. The operating system keeps the most used parts of the index
+     * in its page cache, outside the Java heap.
+     */
+    MMAP,
+
+    /**
+     * Reads the index files with positional reads from file channels. Each read is a system call,
+     * but no address space is used for mappings.
+     */
+    NIO,
+
+    /**
+     * Loads all index files into the Java heap when the index is opened, and new index files
+     * when they are first read. Changes are written through to the files on disk.
+     * This is only suitable for indexes that fit comfortably in the heap.
+     */
+    PRELOAD;
+
+    /**
+     * Opens a directory of this type for the given index path.
+     */
+    Directory open(final Path indexPath) throws IOException {
+        return switch (this) {
+            case AUTO -> FSDirectory.open(indexPath);
+            case MMAP -> new MMapDirectory(indexPath);
+            case NIO -> new NIOFSDirectory(indexPath);
+            case PRELOAD -> PreloadedDirectory.open(indexPath);
+        };
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * Defines when a call that changes the index returns.
+ */
+public enum Durability {
+
+    /**
+     * The call returns when the change has been committed, and will survive a crash.
+     * Concurrent callers share commits, so the cost of each commit is spread over many changes.
+     */
+    SYNC,
+
+    /**
+     * The call returns when the change has been buffered in the index writer. The change is committed
+     * by a later group commit, when enough changes are pending, or when the commit interval has passed.
+     */
+    ASYNC
+}
@@ -19,6 +19,7 @@ package se.dykstrom.lucene.service;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Stream;
 
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.model.BookReference;
@@ -30,4 +31,11 @@ public interface FileService {
     Book readBook(final BookReference reference) throws IOException;
 
     List<Book> readAllBooks(final List<BookReference> references) throws IOException;
+
+    /**
+     * Returns a lazy stream of the books in the given newline-delimited JSON file, with one book per line.
+     * The file is parsed as the stream is consumed, so memory use does not depend on the file size.
+     * The stream must be closed to close the file.
+     */
+    Stream<Book> streamBooks(final Path ndjsonFile) throws IOException;
 }
@@ -17,17 +17,25 @@
 package se.dykstrom.lucene.service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.model.BookReference;
 
 public class FileServiceImpl implements FileService {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader BOOK_READER = OBJECT_MAPPER.readerFor(Book.class);
 
     @Override
     public Book readBook(final Path path) throws IOException {
@@ -47,4 +55,17 @@ public class FileServiceImpl implements FileService {
         }
         return books;
     }
+
+    @Override
+    public Stream<Book> streamBooks(final Path ndjsonFile) throws IOException {
+        final MappingIterator<Book> iterator = BOOK_READER.readValues(ndjsonFile.toFile());
+        final int characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false).onClose(() -> {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.FilterWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query that finds books by authors whose names are spelled almost like a given name. A query on
+ * the author n-grams finds and scores the candidates, mostly using term lookups. Each candidate is then
+ * verified against the author name in the doc values: every word of the given name must be a few edits
+ * away from some word of the author name, like in a fuzzy query. Sharing n-grams is not enough, since
+ * another name may share as many n-grams with a word as a misspelling of it does.
+ * <p>
+ * The number of edits allowed depends on the length of the word: none for words of up to two characters,
+ * one for words of up to five characters, and two for longer words.
+ */
+final class FuzzyAuthorQuery extends Query {
+
+    private final Query gramsQuery;
+    private final String field;
+    private final List<String> words;
+    private final List<CharacterRunAutomaton> automata;
+
+    /**
+     * Creates a new query.
+     *
+     * @param gramsQuery The query on the author n-grams that finds the candidates.
+     * @param field The field whose sorted doc values hold the author name.
+     * @param words The words of the given name, normalized by {@link BookAnalyzers#authorWords(String)}.
+     */
+    FuzzyAuthorQuery(final Query gramsQuery, final String field, final List<String> words) {
+        this.gramsQuery = requireNonNull(gramsQuery);
+        this.field = requireNonNull(field);
+        this.words = List.copyOf(words);
+        this.automata = this.words.stream()
+                .map(word -> new CharacterRunAutomaton(new LevenshteinAutomata(word, true).toAutomaton(maxEdits(word))))
+                .toList();
+    }
+
+    @Override
+    public Query rewrite(final IndexReader reader) throws IOException {
+        final Query rewritten = gramsQuery.rewrite(reader);
+        return rewritten != gramsQuery ? new FuzzyAuthorQuery(rewritten, field, words) : this;
+    }
+
+    @Override
+    public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
+            throws IOException {
+        return new FilterWeight(this, gramsQuery.createWeight(searcher, scoreMode, boost)) {
+            @Override
+            public Scorer scorer(final LeafReaderContext context) throws IOException {
+                final Scorer scorer = in.scorer(context);
+                if (scorer == null) {
+                    return null;
+                }
+                final var verifier = new Verifier(DocValues.getSorted(context.reader(), field));
+                final var twoPhase = new TwoPhaseIterator(scorer.iterator()) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        return verifier.matches(approximation.docID());
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        return words.size();
+                    }
+                };
+                return new VerifiedScorer(this, scorer, twoPhase);
+            }
+
+            @Override
+            public Explanation explain(final LeafReaderContext context, final int doc) throws IOException {
+                if (!new Verifier(DocValues.getSorted(context.reader(), field)).matches(doc)) {
+                    return Explanation.noMatch("author name is not spelled like " + words);
+                }
+                return in.explain(context, doc);
+            }
+
+            @Override
+            public Matches matches(final LeafReaderContext context, final int doc) throws IOException {
+                if (!new Verifier(DocValues.getSorted(context.reader(), field)).matches(doc)) {
+                    return null;
+                }
+                return in.matches(context, doc);
+            }
+
+            @Override
+            public boolean isCacheable(final LeafReaderContext context) {
+                return DocValues.isCacheable(context, field) && in.isCacheable(context);
+            }
+        };
+    }
+
+    @Override
+    public void visit(final QueryVisitor visitor) {
+        gramsQuery.visit(visitor.getSubVisitor(BooleanClause.Occur.MUST, this));
+    }
+
+    @Override
+    public String toString(final String defaultField) {
+        return "fuzzyAuthor(" + gramsQuery.toString(defaultField) + ", " + field + ":" + words + ")";
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return sameClassAs(other)
+                && gramsQuery.equals(((FuzzyAuthorQuery) other).gramsQuery)
+                && field.equals(((FuzzyAuthorQuery) other).field)
+                && words.equals(((FuzzyAuthorQuery) other).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * classHash() + gramsQuery.hashCode()) + field.hashCode()) + words.hashCode();
+    }
+
+    /**
+     * Returns the number of edits that the given word may be away from a word of the author name.
+     */
+    static int maxEdits(final String word) {
+        final int length = word.codePointCount(0, word.length());
+        return length <= 2 ? 0 : length <= 5 ? 1 : LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE;
+    }
+
+    /**
+     * Verifies the author names of the documents in one segment. Many books share the same author,
+     * so the result is remembered for each name.
+     */
+    private final class Verifier {
+
+        private final SortedDocValues names;
+        private final Map<Integer, Boolean> verifiedNames = new HashMap<>();
+
+        private Verifier(final SortedDocValues names) {
+            this.names = names;
+        }
+
+        boolean matches(final int doc) throws IOException {
+            if (!names.advanceExact(doc)) {
+                return false;
+            }
+            final int ord = names.ordValue();
+            Boolean verified = verifiedNames.get(ord);
+            if (verified == null) {
+                verified = isSpelledLike(BookAnalyzers.authorWords(names.lookupOrd(ord).utf8ToString()));
+                verifiedNames.put(ord, verified);
+            }
+            return verified;
+        }
+
+        private boolean isSpelledLike(final List<String> nameWords) {
+            for (final CharacterRunAutomaton automaton : automata) {
+                if (nameWords.stream().noneMatch(automaton::run)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A scorer that scores like the n-gram scorer, but only matches the documents that pass verification.
+     */
+    private static final class VerifiedScorer extends Scorer {
+
+        private final Scorer scorer;
+        private final TwoPhaseIterator twoPhase;
+
+        private VerifiedScorer(final Weight weight, final Scorer scorer, final TwoPhaseIterator twoPhase) {
+            super(weight);
+            this.scorer = scorer;
+            this.twoPhase = twoPhase;
+        }
+
+        @Override
+        public int docID() {
+            return scorer.docID();
+        }
+
+        @Override
+        public float score() throws IOException {
+            return scorer.score();
+        }
+
+        @Override
+        public float getMaxScore(final int upTo) throws IOException {
+            return scorer.getMaxScore(upTo);
+        }
+
+        @Override
+        public int advanceShallow(final int target) throws IOException {
+            return scorer.advanceShallow(target);
+        }
+
+        @Override
+        public void setMinCompetitiveScore(final float minScore) throws IOException {
+            scorer.setMinCompetitiveScore(minScore);
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return TwoPhaseIterator.asDocIdSetIterator(twoPhase);
+        }
+
+        @Override
+        public TwoPhaseIterator twoPhaseIterator() {
+            return twoPhase;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+
+import org.apache.lucene.index.IndexWriterConfig;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration for an {@link IndexServiceImpl}.
+ *
+ * @param bookStorage Where the complete book records are stored.
+ * @param indexThreads The number of threads that read, parse, and index book files in a bulk indexing run.
+ * @param ramBufferSizeMb The amount of RAM the index writer may use to buffer documents before flushing them.
+ * @param durability The default durability of single book updates.
+ * @param commitBatchSize The number of pending changes that triggers a group commit.
+ * @param commitInterval The maximum time a change may be pending before it is committed.
+ * @param directoryType How the index files are accessed.
+ * @param shards The number of shards that the books are divided into by ISBN. With one shard, the index is
+ *               stored in the index directory itself. With more shards, shard {@code i} is stored in the
+ *               subdirectory {@code shard-i}. The number of shards of an existing index cannot be changed.
+ */
+public record IndexConfig(BookStorage bookStorage,
+                          int indexThreads,
+                          double ramBufferSizeMb,
+                          Durability durability,
+                          int commitBatchSize,
+                          Duration commitInterval,
+                          DirectoryType directoryType,
+                          int shards) {
+
+    public static final IndexConfig DEFAULT = new IndexConfig(
+            BookStorage.INDEX,
+            Runtime.getRuntime().availableProcessors(),
+            IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB,
+            Durability.SYNC,
+            1000,
+            Duration.ofSeconds(1),
+            DirectoryType.AUTO,
+            1
+    );
+
+    public IndexConfig {
+        requireNonNull(bookStorage);
+        requireNonNull(durability);
+        requireNonNull(commitInterval);
+        requireNonNull(directoryType);
+        if (indexThreads <= 0) {
+            throw new IllegalArgumentException("index threads must be positive: " + indexThreads);
+        }
+        if (ramBufferSizeMb <= 0) {
+            throw new IllegalArgumentException("RAM buffer size must be positive: " + ramBufferSizeMb);
+        }
+        if (commitBatchSize <= 0) {
+            throw new IllegalArgumentException("commit batch size must be positive: " + commitBatchSize);
+        }
+        if (commitInterval.isNegative() || commitInterval.isZero()) {
+            throw new IllegalArgumentException("commit interval must be positive: " + commitInterval);
+        }
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+    }
+
+    public IndexConfig withBookStorage(final BookStorage bookStorage) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withIndexThreads(final int indexThreads) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withRamBufferSizeMb(final double ramBufferSizeMb) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withDurability(final Durability durability) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withCommitBatchSize(final int commitBatchSize) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withCommitInterval(final Duration commitInterval) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withDirectoryType(final DirectoryType directoryType) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+
+    public IndexConfig withShards(final int shards) {
+        return new IndexConfig(bookStorage, indexThreads, ramBufferSizeMb, durability, commitBatchSize, commitInterval,
+                directoryType, shards);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.util.IOUtils;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One generation of an index. Each complete rebuild of the index is written to a new generation directory,
+ * {@code generation-N} inside the index directory, while queries keep searching the current generation.
+ * When the new generation is complete, it is published by atomically replacing the pointer file
+ * {@code current} in the index directory, which holds the name of the current generation directory.
+ * <p>
+ * An index directory without a pointer file holds generation 0, which is stored in the index directory itself.
+ * Such an index was built in place, before the first complete rebuild.
+ * <p>
+ * Searchers mark the generation they search as in use, with a shared lock on the lock file
+ * {@code generation-N.lock} in the index directory. A replaced generation is only deleted when nobody
+ * holds the lock, so that searchers in other processes, that have not yet moved to the current generation,
+ * do not lose their files. The operating system releases the lock if a process dies.
+ *
+ * @param number The generation number, which increases with every rebuild.
+ * @param path The directory of the generation, which holds the index, or the shards of the index.
+ */
+record IndexGeneration(long number, Path path) {
+
+    static final String POINTER_FILE = "current";
+
+    private static final String PREFIX = "generation-";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    // The lock files of the generations that are in use in this process, since a process
+    // can only hold one lock on a file. Guarded by itself.
+    private static final Map<Path, InUse> IN_USE = new HashMap<>();
+
+    IndexGeneration {
+        requireNonNull(path);
+    }
+
+    /**
+     * Returns the current generation of the index in the given directory.
+     */
+    static IndexGeneration current(final Path indexPath) throws IOException {
+        final String name;
+        try {
+            name = Files.readString(indexPath.resolve(POINTER_FILE)).strip();
+        } catch (NoSuchFileException e) {
+            return new IndexGeneration(0, indexPath);
+        }
+        if (!name.startsWith(PREFIX)) {
+            throw new IOException("invalid index generation in " + indexPath.resolve(POINTER_FILE) + ": " + name);
+        }
+        try {
+            return new IndexGeneration(Long.parseLong(name.substring(PREFIX.length())), indexPath.resolve(name));
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid index generation in " + indexPath.resolve(POINTER_FILE) + ": " + name);
+        }
+    }
+
+    /**
+     * Returns the generation after the current one. Its directory is removed if it is left over
+     * from a failed rebuild.
+     */
+    static IndexGeneration next(final Path indexPath) throws IOException {
+        final long number = current(indexPath).number() + 1;
+        final var next = new IndexGeneration(number, indexPath.resolve(PREFIX + number));
+        IOUtils.rm(next.path());
+        return next;
+    }
+
+    /**
+     * Makes this generation the current generation of the index in the given directory. The pointer file
+     * is written to a temporary file, synced, and moved into place, so readers see either the old
+     * or the new generation, also after a crash.
+     */
+    void publish(final Path indexPath) throws IOException {
+        final Path tempFile = indexPath.resolve(POINTER_FILE + ".tmp");
+        Files.writeString(tempFile, path.getFileName().toString());
+        IOUtils.fsync(tempFile, false);
+        Files.move(tempFile, indexPath.resolve(POINTER_FILE), StandardCopyOption.ATOMIC_MOVE);
+        IOUtils.fsync(indexPath, true);
+    }
+
+    /**
+     * Marks this generation as in use until the returned object is closed, so that it is not deleted.
+     * Uses in this process are counted, and the generation stays locked until the last one is closed.
+     */
+    Closeable markInUse(final Path indexPath) throws IOException {
+        final Path lockFile = lockFile(indexPath);
+        synchronized (IN_USE) {
+            InUse inUse = IN_USE.get(lockFile);
+            if (inUse == null) {
+                final FileChannel channel = FileChannel.open(lockFile, READ, WRITE, CREATE);
+                try {
+                    // Waits if another process is deleting the generation right now
+                    channel.lock(0, Long.MAX_VALUE, true);
+                } catch (IOException | RuntimeException e) {
+                    IOUtils.closeWhileHandlingException(channel);
+                    throw e;
+                }
+                inUse = new InUse(channel);
+                IN_USE.put(lockFile, inUse);
+            }
+            inUse.count++;
+        }
+        final var released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                release(lockFile);
+            }
+        };
+    }
+
+    /**
+     * Deletes the files of this generation, unless it is in use in this or another process.
+     * This must not be the current generation.
+     *
+     * @return True if the generation was deleted.
+     */
+    boolean deleteIfUnused(final Path indexPath) throws IOException {
+        final Path lockFile = lockFile(indexPath);
+        synchronized (IN_USE) {
+            if (IN_USE.containsKey(lockFile)) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(lockFile, READ, WRITE, CREATE);
+                 FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    return false;
+                }
+                delete();
+            }
+            // A locked file cannot be deleted on all platforms, so it is deleted after the lock is released
+            try {
+                Files.deleteIfExists(lockFile);
+            } catch (IOException e) {
+                // Another process opened it again, and the next rebuild deletes it instead
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Deletes the files of this generation, whether it is in use or not. This must not be the current generation.
+     */
+    void delete() throws IOException {
+        if (number > 0) {
+            IOUtils.rm(path);
+        } else {
+            // Generation 0 shares the index directory with the pointer file and the later generations
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (final Path file : stream) {
+                    final String name = file.getFileName().toString();
+                    if (!name.startsWith(PREFIX) && !name.startsWith(POINTER_FILE)) {
+                        IOUtils.rm(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all generations of the index in the given directory that are neither current nor in use.
+     * These are generations that were replaced, or left over from failed rebuilds. A generation that is
+     * still in use is deleted when its last searcher is released, or otherwise by a later call.
+     */
+    static void deleteOldGenerations(final Path indexPath) throws IOException {
+        final IndexGeneration current = current(indexPath);
+        if (current.number() == 0) {
+            return;
+        }
+        // Also look for lock files, whose generations may already be gone
+        final SortedSet<Long> numbers = new TreeSet<>();
+        numbers.add(0L);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath, PREFIX + "*")) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+                final int end = name.endsWith(LOCK_SUFFIX) ? name.length() - LOCK_SUFFIX.length() : name.length();
+                try {
+                    numbers.add(Long.parseLong(name.substring(PREFIX.length(), end)));
+                } catch (NumberFormatException e) {
+                    // Not a generation
+                }
+            }
+        }
+        numbers.remove(current.number());
+        for (final long number : numbers) {
+            final Path path = number == 0 ? indexPath : indexPath.resolve(PREFIX + number);
+            new IndexGeneration(number, path).deleteIfUnused(indexPath);
+        }
+    }
+
+    private Path lockFile(final Path indexPath) {
+        return indexPath.resolve(PREFIX + number + LOCK_SUFFIX);
+    }
+
+    private static void release(final Path lockFile) throws IOException {
+        synchronized (IN_USE) {
+            final InUse inUse = IN_USE.get(lockFile);
+            inUse.count--;
+            if (inUse.count == 0) {
+                IN_USE.remove(lockFile);
+                // Closing the channel releases the lock
+                inUse.channel.close();
+            }
+        }
+    }
+
+    /**
+     * The lock file of a generation that is in use in this process, and the number of uses.
+     */
+    private static final class InUse {
+
+        private final FileChannel channel;
+
+        // Guarded by IN_USE
+        private int count;
+
+        private InUse(final FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics recorded by an {@link IndexServiceImpl}.
+ */
+final class IndexMetrics {
+
+    /** The time it takes to commit the index. */
+    final LatencyHistogram commit = new LatencyHistogram();
+
+    /** The time it takes to read one book file. */
+    final LatencyHistogram readBook = new LatencyHistogram();
+
+    /** The number of documents added or updated. */
+    final LongAdder documentsIndexed = new LongAdder();
+
+    /** The number of bytes read from book files. */
+    final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Returns all latency histograms, by name.
+     */
+    Map<String, LatencyHistogram> latencies() {
+        final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        latencies.put("commit", commit);
+        latencies.put("readBook", readBook);
+        return latencies;
+    }
+}
@@ -16,12 +16,45 @@
 
 package se.dykstrom.lucene.service;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 
-public interface IndexService {
+public interface IndexService extends Closeable {
 
+    /**
+     * Adds or updates the book in the given file, with the configured default durability.
+     */
     void indexBook(final Path bookFile) throws IOException;
 
-    void indexAllBooks(final Path bookDir) throws IOException;
+    /**
+     * Adds or updates the book in the given file, with the given durability.
+     */
+    void indexBook(final Path bookFile, final Durability durability) throws IOException;
+
+    /**
+     * Replaces the contents of the index with all book files in the given directory.
+     * If indexing fails, the previous contents of the index are kept.
+     */
+    IndexStats indexAllBooks(final Path bookDir) throws IOException;
+
+    /**
+     * Adds or updates all books in the given newline-delimited JSON file, with one book per line.
+     * The file is streamed, so memory use does not depend on the file size. The complete books are
+     * stored in the index, regardless of the configured book storage. If indexing fails, none of the
+     * books in the file are added.
+     */
+    IndexStats indexBookStream(final Path ndjsonFile) throws IOException;
+
+    /**
+     * Brings the index up to date with the book files in the given directory. Only files that have been
+     * added or changed since the last sync are indexed, and documents whose files are gone are deleted.
+     * A file is considered changed if its size or modification time differs from the indexed values.
+     */
+    SyncStats syncDirectory(final Path bookDir) throws IOException;
+
+    /**
+     * Commits all pending changes, and returns when they have been committed.
+     */
+    void commit() throws IOException;
 }
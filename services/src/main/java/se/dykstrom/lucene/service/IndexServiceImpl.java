@@ -16,73 +16,789 @@
 
 package se.dykstrom.lucene.service;
 
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene91.Lucene91Codec;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.model.FieldName;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * An index service that keeps one index writer open for its whole lifetime. Single book updates are
+ * committed in groups: each commit covers all changes made before it started, so concurrent callers
+ * that ask for {@link Durability#SYNC} share commits instead of paying for one each. Bulk operations
+ * get exclusive access to the writer, so that a group commit never commits a partially built index.
+ * <p>
+ * A complete rebuild writes a new {@link IndexGeneration} next to the current one, which keeps serving
+ * queries meanwhile. When the new index has been committed and verified, it is published, and searchers
+ * switch to it atomically.
+ * <p>
+ * If the index is divided into shards, there is one writer for each shard, and each book is written
+ * to the shard that owns its ISBN. Commits commit all shards, one at a time.
+ */
 public class IndexServiceImpl implements IndexService {
 
-    private final Analyzer analyzer = new StandardAnalyzer();
+    private static final System.Logger LOGGER = System.getLogger(IndexServiceImpl.class.getName());
+
+    private static final int QUEUED_FILES_PER_THREAD = 4;
+
+    // Author facets are stored as sorted set doc values, so no taxonomy index is needed.
+    // The query service reads the facets with the same configuration.
+    static final FacetsConfig FACETS_CONFIG = new FacetsConfig();
+
+    private final Analyzer analyzer = BookAnalyzers.create();
     private final Path indexPath;
     private final FileService fileService;
+    private final IndexConfig config;
+
+    /** Single updates and commits hold the read lock, bulk operations hold the write lock. */
+    private final ReadWriteLock writerLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService committer;
+    private final IndexMetrics metrics = new IndexMetrics();
+
+    // Guarded by this
+    private IndexGeneration generation;
+    private List<Directory> directories;
+    private List<IndexWriter> writers;
+    private boolean closed;
+
+    // Guarded by commitLock
+    private final Object commitLock = new Object();
+    private CompletableFuture<Void> nextCommit = new CompletableFuture<>();
+    private int pendingChanges;
+    private boolean commitScheduled;
 
     public IndexServiceImpl(final Path indexPath) {
         this(indexPath, new FileServiceImpl());
     }
 
     public IndexServiceImpl(final Path indexPath, final FileService fileService) {
+        this(indexPath, fileService, IndexConfig.DEFAULT);
+    }
+
+    public IndexServiceImpl(final Path indexPath, final FileService fileService, final IndexConfig config) {
         this.indexPath = requireNonNull(indexPath);
         this.fileService = requireNonNull(fileService);
+        this.config = requireNonNull(config);
+        this.committer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("index-committer"));
+        final long interval = config.commitInterval().toMillis();
+        committer.scheduleWithFixedDelay(this::commitIfPending, interval, interval, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void indexBook(final Path bookFile) throws IOException {
-        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        try (Directory directory = FSDirectory.open(indexPath);
-             IndexWriter writer = new IndexWriter(directory, config)) {
-            final Book book = fileService.readBook(bookFile);
-            writer.updateDocument(new Term(FieldName.ISBN.value(), book.isbn()), createDocument(bookFile, book));
+        indexBook(bookFile, config.durability());
+    }
+
+    @Override
+    public void indexBook(final Path bookFile, final Durability durability) throws IOException {
+        final Document document = readDocument(bookFile);
+        final String isbn = document.get(FieldName.ISBN.value());
+
+        final CompletableFuture<Void> commit;
+        writerLock.readLock().lock();
+        try {
+            shardWriter(writers(), isbn).updateDocument(new Term(FieldName.ISBN.value(), isbn), document);
+            metrics.documentsIndexed.increment();
+            commit = addPendingChange(durability == Durability.SYNC);
+        } finally {
+            writerLock.readLock().unlock();
+        }
+
+        if (durability == Durability.SYNC) {
+            awaitCommit(commit);
+        }
+    }
+
+    @Override
+    public IndexStats indexAllBooks(final Path bookDir) throws IOException {
+        final long start = System.nanoTime();
+        writerLock.writeLock().lock();
+        try {
+            // Commit pending single updates, so that they are in the index that keeps serving during the rebuild
+            final List<IndexWriter> currentWriters = openWriters();
+            if (currentWriters != null) {
+                commitWriters(currentWriters);
+            }
+            // Searchers expect the same number of shards in the new generation
+            Shards.checkLayout(IndexGeneration.current(indexPath).path(), config.shards());
+            IndexGeneration.deleteOldGenerations(indexPath);
+
+            final IndexGeneration next = IndexGeneration.next(indexPath);
+            final List<Directory> newDirectories = new ArrayList<>();
+            final List<IndexWriter> newWriters = new ArrayList<>();
+            final long documents;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(bookDir)) {
+                createShards(next, newDirectories, newWriters);
+                documents = indexInParallel(files, Path::toString, file -> {
+                    final Document document = readDocument(file);
+                    shardWriter(newWriters, document.get(FieldName.ISBN.value())).addDocument(document);
+                });
+                commitWriters(newWriters);
+                verify(next, newDirectories, documents);
+                next.publish(indexPath);
+            } catch (IOException | RuntimeException e) {
+                // Keep the current index instead of publishing a partial one
+                discard(next, newDirectories, newWriters, e);
+                throw e;
+            }
+            swap(next, newDirectories, newWriters);
+            return createStats(documents, start);
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public IndexStats indexBookStream(final Path ndjsonFile) throws IOException {
+        final long start = System.nanoTime();
+        writerLock.writeLock().lock();
+        try {
+            final List<IndexWriter> writers = writers();
+            commitWriters(writers);
+            final long documents;
+            try (Stream<Book> books = fileService.streamBooks(ndjsonFile)) {
+                // Books are parsed one by one on this thread, and analyzed and indexed by the workers
+                documents = indexInParallel(books::iterator, Book::isbn, book ->
+                        shardWriter(writers, book.isbn())
+                                .updateDocument(new Term(FieldName.ISBN.value(), book.isbn()), createDocument(book)));
+                commitWriters(writers);
+                metrics.bytesRead.add(Files.size(ndjsonFile));
+            } catch (IOException | RuntimeException e) {
+                rollback();
+                throw e;
+            }
+            return createStats(documents, start);
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SyncStats syncDirectory(final Path bookDir) throws IOException {
+        final long start = System.nanoTime();
+        writerLock.writeLock().lock();
+        try {
+            final List<IndexWriter> writers = writers();
+            commitWriters(writers);
+            // The files in a normalized directory have normalized paths, like the indexed files
+            final Path normalizedBookDir = normalize(bookDir);
+            final Map<String, FileState> indexedFiles = readIndexedFiles(writers, normalizedBookDir);
+            final List<Path> changedFiles = new ArrayList<>();
+            long added = 0;
+            long unchanged = 0;
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(normalizedBookDir)) {
+                for (final Path file : files) {
+                    final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    final FileState indexedState = indexedFiles.remove(file.toString());
+                    if (indexedState == null) {
+                        changedFiles.add(file);
+                        added++;
+                    } else if (!indexedState.equals(FileState.of(attributes))) {
+                        changedFiles.add(file);
+                    } else {
+                        unchanged++;
+                    }
+                }
+            }
+
+            try {
+                indexInParallel(changedFiles, Path::toString, file -> {
+                    final var pathTerm = new Term(FieldName.PATH.value(), file.toString());
+                    final Document document = readDocument(file);
+                    final IndexWriter owner = shardWriter(writers, document.get(FieldName.ISBN.value()));
+                    // A changed ISBN may move the book to another shard
+                    for (final IndexWriter writer : writers) {
+                        if (writer != owner) {
+                            writer.deleteDocuments(pathTerm);
+                        }
+                    }
+                    owner.updateDocument(pathTerm, document);
+                });
+                // The files that remain in the map have been removed from the directory
+                for (final String path : indexedFiles.keySet()) {
+                    for (final IndexWriter writer : writers) {
+                        writer.deleteDocuments(new Term(FieldName.PATH.value(), path));
+                    }
+                }
+                commitWriters(writers);
+            } catch (IOException | RuntimeException e) {
+                rollback();
+                throw e;
+            }
+
+            final var stats = new SyncStats(added, changedFiles.size() - added, indexedFiles.size(), unchanged,
+                    Duration.ofNanos(System.nanoTime() - start));
+            LOGGER.log(Level.INFO, () -> String.format("Synced %s in %d ms: %d added, %d updated, %d deleted",
+                    bookDir, stats.elapsed().toMillis(), stats.added(), stats.updated(), stats.deleted()));
+            return stats;
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void commit() throws IOException {
+        final CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            commit = nextCommit;
+            scheduleCommit();
+        }
+        awaitCommit(commit);
+    }
+
+    /**
+     * Returns the metrics recorded by this service.
+     */
+    IndexMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of segments in the last commit of all shards, or 0 if the index is not open.
+     */
+    synchronized int segmentCount() throws IOException {
+        if (directories == null || closed) {
+            return 0;
         }
+        int segments = 0;
+        for (final Directory directory : directories) {
+            if (DirectoryReader.indexExists(directory)) {
+                segments += SegmentInfos.readLatestCommit(directory).size();
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the size on disk of the index, including files that are not yet committed,
+     * or 0 if the index is not open.
+     */
+    synchronized long indexSizeBytes() throws IOException {
+        if (directories == null || closed) {
+            return 0;
+        }
+        long size = 0;
+        for (final Directory directory : directories) {
+            for (final String file : directory.listAll()) {
+                try {
+                    size += directory.fileLength(file);
+                } catch (NoSuchFileException e) {
+                    // Deleted by a merge after it was listed
+                }
+            }
+        }
+        return size;
     }
 
     @Override
-    public void indexAllBooks(final Path bookDir) throws IOException {
-        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-        try (Directory directory = FSDirectory.open(indexPath);
-             IndexWriter writer = new IndexWriter(directory, config)) {
-            for (File file : requireNonNull(bookDir.toFile().listFiles())) {
-                writer.addDocument(createDocument(file.toPath(), fileService.readBook(file.toPath())));
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        committer.shutdown();
+        awaitTermination(committer);
+        writerLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                closed = true;
+                // Closing the writers commits all pending changes
+                final List<Closeable> closeables = new ArrayList<>();
+                if (writers != null) {
+                    closeables.addAll(writers);
+                }
+                if (directories != null) {
+                    closeables.addAll(directories);
+                }
+                IOUtils.close(closeables);
+            }
+            synchronized (commitLock) {
+                nextCommit.complete(null);
+            }
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the index writers of all shards in the current index generation, opening them on first use.
+     */
+    private synchronized List<IndexWriter> writers() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("index service is closed");
+        }
+        if (directories == null) {
+            final IndexGeneration currentGeneration = IndexGeneration.current(indexPath);
+            Shards.checkLayout(currentGeneration.path(), config.shards());
+            final List<Directory> newDirectories = new ArrayList<>();
+            try {
+                for (final Path shardPath : Shards.paths(currentGeneration.path(), config.shards())) {
+                    newDirectories.add(config.directoryType().open(shardPath));
+                }
+            } catch (IOException | RuntimeException e) {
+                IOUtils.closeWhileHandlingException(newDirectories);
+                throw e;
+            }
+            generation = currentGeneration;
+            directories = newDirectories;
+        }
+        if (writers == null) {
+            final List<IndexWriter> newWriters = new ArrayList<>();
+            try {
+                for (final Directory directory : directories) {
+                    final IndexWriterConfig writerConfig = createWriterConfig();
+                    writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                    newWriters.add(new IndexWriter(directory, writerConfig));
+                }
+            } catch (IOException | RuntimeException e) {
+                IOUtils.closeWhileHandlingException(newWriters);
+                throw e;
+            }
+            writers = List.copyOf(newWriters);
+        }
+        return writers;
+    }
+
+    /**
+     * Returns the index writers of all shards, or {@code null} if they are not open.
+     */
+    private synchronized List<IndexWriter> openWriters() {
+        if (closed) {
+            throw new IllegalStateException("index service is closed");
+        }
+        return writers;
+    }
+
+    /**
+     * Creates empty shards in the given generation, and adds their directories and index writers to the
+     * given lists, so that the caller can clean up also if this method fails half-way.
+     */
+    private void createShards(final IndexGeneration generation,
+                              final List<Directory> directories,
+                              final List<IndexWriter> writers) throws IOException {
+        for (final Path shardPath : Shards.paths(generation.path(), config.shards())) {
+            directories.add(config.directoryType().open(shardPath));
+        }
+        for (final Directory directory : directories) {
+            final IndexWriterConfig writerConfig = createWriterConfig();
+            writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            writers.add(new IndexWriter(directory, writerConfig));
+        }
+    }
+
+    /**
+     * Verifies that the committed shards of a rebuilt index contain all indexed documents.
+     */
+    private static void verify(final IndexGeneration generation,
+                               final List<Directory> directories,
+                               final long documents) throws IOException {
+        long committedDocuments = 0;
+        for (final Directory directory : directories) {
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                committedDocuments += reader.numDocs();
+            }
+        }
+        if (committedDocuments != documents) {
+            throw new IOException("index " + generation.path() + " has " + committedDocuments
+                    + " documents, expected " + documents);
+        }
+    }
+
+    /**
+     * Discards a rebuilt index generation that could not be completed.
+     */
+    private static void discard(final IndexGeneration generation,
+                                final List<Directory> directories,
+                                final List<IndexWriter> writers,
+                                final Exception e) {
+        for (final IndexWriter writer : writers) {
+            try {
+                writer.rollback();
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+        IOUtils.closeWhileHandlingException(directories);
+        try {
+            generation.delete();
+        } catch (IOException suppressed) {
+            e.addSuppressed(suppressed);
+        }
+    }
+
+    /**
+     * Makes the given, already published, generation the one that this service writes to, and closes
+     * the writers of the previous generation. Searchers that still use the previous generation delete it
+     * when they are done, and otherwise the next rebuild does.
+     */
+    private synchronized void swap(final IndexGeneration newGeneration,
+                                   final List<Directory> newDirectories,
+                                   final List<IndexWriter> newWriters) {
+        final IndexGeneration oldGeneration = generation;
+        final List<Closeable> closeables = new ArrayList<>();
+        if (writers != null) {
+            closeables.addAll(writers);
+        }
+        if (directories != null) {
+            closeables.addAll(directories);
+        }
+        generation = newGeneration;
+        directories = newDirectories;
+        writers = List.copyOf(newWriters);
+        try {
+            IOUtils.close(closeables);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close replaced index " + oldGeneration.path(), e);
+        }
+    }
+
+    /**
+     * Returns the writer of the shard that owns the book with the given ISBN.
+     */
+    private static IndexWriter shardWriter(final List<IndexWriter> writers, final String isbn) {
+        return writers.get(Shards.shardOf(isbn, writers.size()));
+    }
+
+    /**
+     * Rolls back all uncommitted changes. This closes the writers, so the next operation opens new ones.
+     */
+    private synchronized void rollback() throws IOException {
+        if (writers != null) {
+            final List<IndexWriter> rolledBack = writers;
+            writers = null;
+            for (final IndexWriter writer : rolledBack) {
+                writer.rollback();
+            }
+        }
+    }
+
+    /**
+     * Registers a change made to the index writer, and returns the commit that will include it.
+     * The commit is scheduled at once if the caller is waiting for it, or if enough changes are pending.
+     */
+    private CompletableFuture<Void> addPendingChange(final boolean waiting) {
+        synchronized (commitLock) {
+            pendingChanges++;
+            if (waiting || pendingChanges >= config.commitBatchSize()) {
+                scheduleCommit();
+            }
+            return nextCommit;
+        }
+    }
+
+    private void scheduleCommit() {
+        synchronized (commitLock) {
+            if (!commitScheduled) {
+                try {
+                    committer.execute(this::commitPendingChanges);
+                    commitScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // The service is closing, and closing the writer commits all pending changes
+                }
+            }
+        }
+    }
+
+    private void commitIfPending() {
+        synchronized (commitLock) {
+            if (pendingChanges > 0) {
+                scheduleCommit();
+            }
+        }
+    }
+
+    /**
+     * Commits all changes made so far, and completes the commit future that callers have been waiting for.
+     * Changes registered while the commit is running wait for the next commit, which is scheduled right away
+     * if anyone asks for it. This runs on the committer thread only.
+     */
+    private void commitPendingChanges() {
+        final CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            commitScheduled = false;
+            commit = nextCommit;
+            nextCommit = new CompletableFuture<>();
+            pendingChanges = 0;
+        }
+        writerLock.readLock().lock();
+        try {
+            commitWriters(writers());
+            commit.complete(null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to commit index " + indexPath, e);
+            commit.completeExceptionally(e);
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    private static void awaitCommit(final CompletableFuture<Void> commit) throws IOException {
+        try {
+            commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for commit");
+        } catch (ExecutionException e) {
+            throw new IOException("failed to commit index", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the absolute and normalized form of the given path, so that the same file is always indexed
+     * with the same path, however the caller refers to it.
+     */
+    private static Path normalize(final Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the file state of all indexed book files in the given normalized directory, keyed by path.
+     */
+    private static Map<String, FileState> readIndexedFiles(final List<IndexWriter> writers,
+                                                           final Path bookDir) throws IOException {
+        final Map<String, FileState> indexedFiles = new HashMap<>();
+        for (final IndexWriter writer : writers) {
+            readIndexedFiles(writer, bookDir, indexedFiles);
+        }
+        return indexedFiles;
+    }
+
+    private static void readIndexedFiles(final IndexWriter writer,
+                                         final Path bookDir,
+                                         final Map<String, FileState> indexedFiles) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (final LeafReaderContext context : reader.leaves()) {
+                final LeafReader leafReader = context.reader();
+                final Bits liveDocs = leafReader.getLiveDocs();
+                final SortedDocValues paths = leafReader.getSortedDocValues(FieldName.PATH.value());
+                final NumericDocValues sizes = leafReader.getNumericDocValues(FieldName.FILE_SIZE.value());
+                final NumericDocValues modified = leafReader.getNumericDocValues(FieldName.FILE_MODIFIED.value());
+                if (paths == null || sizes == null || modified == null) {
+                    continue;
+                }
+                for (int doc = paths.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = paths.nextDoc()) {
+                    final boolean live = liveDocs == null || liveDocs.get(doc);
+                    if (live && sizes.advanceExact(doc) && modified.advanceExact(doc)) {
+                        final String path = paths.lookupOrd(paths.ordValue()).utf8ToString();
+                        // Paths indexed before they were normalized are kept as they are, and deleted by the sync
+                        if (bookDir.equals(normalize(Path.of(path)).getParent())) {
+                            indexedFiles.put(path, new FileState(sizes.longValue(), modified.longValue()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the given indexer to all items, using a bounded pool of worker threads. When the work queue
+     * is full, the calling thread indexes the next item itself, which keeps the number of parsed but not
+     * yet indexed books bounded.
+     *
+     * @param items The items to index, for example book files.
+     * @param describer Describes an item in error messages.
+     * @param indexer Indexes one item.
+     * @return The number of indexed items.
+     */
+    private <T> long indexInParallel(final Iterable<T> items,
+                                     final Function<T, String> describer,
+                                     final Indexer<T> indexer) throws IOException {
+        final int threads = config.indexThreads();
+        final var executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_FILES_PER_THREAD),
+                new DaemonThreadFactory("index-worker"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final var documents = new AtomicLong();
+        final var failure = new AtomicReference<IOException>();
+
+        try {
+            for (final T item : items) {
+                if (failure.get() != null) {
+                    break;
+                }
+                executor.execute(() -> {
+                    if (failure.get() == null) {
+                        try {
+                            indexer.index(item);
+                            documents.incrementAndGet();
+                            metrics.documentsIndexed.increment();
+                        } catch (Exception e) {
+                            final var message = "failed to index " + describer.apply(item);
+                            failure.compareAndSet(null, new IOException(message, e));
+                        }
+                    }
+                });
             }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return documents.get();
+    }
+
+    private static IndexStats createStats(final long documents, final long start) {
+        final var stats = new IndexStats(documents, Duration.ofNanos(System.nanoTime() - start));
+        LOGGER.log(Level.INFO, () -> String.format("Indexed %d books in %d ms (%.1f docs/s)",
+                stats.documents(), stats.elapsed().toMillis(), stats.documentsPerSecond()));
+        return stats;
+    }
+
+    private static void awaitTermination(final ExecutorService executor) throws InterruptedIOException {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.DEBUG, "Waiting for index workers to finish");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for index workers");
+        }
+    }
+
+    private IndexWriterConfig createWriterConfig() {
+        final IndexWriterConfig writerConfig = new IndexWriterConfig(analyzer);
+        writerConfig.setRAMBufferSizeMB(config.ramBufferSizeMb());
+        if (config.bookStorage() == BookStorage.INDEX) {
+            // The stored descriptions make up most of the index, so trade some speed for size
+            writerConfig.setCodec(new Lucene91Codec(Lucene91Codec.Mode.BEST_COMPRESSION));
+        }
+        return writerConfig;
+    }
+
+    private Document readDocument(final Path file) throws IOException {
+        // Read the attributes first, so a concurrent change to the file is picked up by the next sync
+        final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long start = System.nanoTime();
+        final Book book = fileService.readBook(file);
+        metrics.readBook.recordSince(start);
+        metrics.bytesRead.add(attributes.size());
+        return createDocument(file, attributes, book);
+    }
+
+    private void commitWriters(final List<IndexWriter> writers) throws IOException {
+        final long start = System.nanoTime();
+        for (final IndexWriter writer : writers) {
+            writer.commit();
         }
+        metrics.commit.recordSince(start);
     }
 
-    private Document createDocument(final Path path, final Book book) {
+    private Document createDocument(final Path path, final BasicFileAttributes attributes, final Book book)
+            throws IOException {
+        final var fileState = FileState.of(attributes);
+        final Document document = createDocument(book, config.bookStorage() == BookStorage.INDEX);
+        final String normalizedPath = normalize(path).toString();
+        document.add(new StringField(FieldName.PATH.value(), normalizedPath, Field.Store.YES));
+        document.add(new SortedDocValuesField(FieldName.PATH.value(), new BytesRef(normalizedPath)));
+        document.add(new NumericDocValuesField(FieldName.FILE_SIZE.value(), fileState.size()));
+        document.add(new NumericDocValuesField(FieldName.FILE_MODIFIED.value(), fileState.modified()));
+        return document;
+    }
+
+    /**
+     * Creates a document for a book that does not come from a book file. There is no file to read
+     * the book from later, so the complete book is always stored in the index.
+     */
+    private Document createDocument(final Book book) throws IOException {
+        return createDocument(book, true);
+    }
+
+    private Document createDocument(final Book book, final boolean storeBook) throws IOException {
         Document document = new Document();
-        document.add(new StringField(FieldName.PATH.value(), path.toString(), Field.Store.YES));
         document.add(new StringField(FieldName.ISBN.value(), book.isbn(), Field.Store.YES));
         document.add(new TextField(FieldName.TITLE.value(), book.title(), Field.Store.YES));
         document.add(new TextField(FieldName.AUTHOR.value(), book.author(), Field.Store.YES));
+        // The author n-grams make it possible to find authors with misspelled names using term lookups only
+        document.add(new TextField(FieldName.AUTHOR_GRAMS.value(), book.author(), Field.Store.NO));
         document.add(new IntPoint(FieldName.PAGES.value(), book.pages()));
-        document.add(new TextField(FieldName.DESCRIPTION.value(), book.description(), Field.Store.NO));
-        return document;
+        // Doc values make it possible to sort search results while collecting them
+        document.add(new SortedDocValuesField(FieldName.TITLE.value(), new BytesRef(book.title().toLowerCase())));
+        document.add(new SortedDocValuesField(FieldName.AUTHOR.value(), new BytesRef(book.author().toLowerCase())));
+        document.add(new NumericDocValuesField(FieldName.PAGES.value(), book.pages()));
+        if (storeBook) {
+            document.add(new StoredField(FieldName.PAGES.value(), book.pages()));
+        }
+        final var storeDescription = storeBook ? Field.Store.YES : Field.Store.NO;
+        document.add(new TextField(FieldName.DESCRIPTION.value(), book.description(), storeDescription));
+        // A facet label cannot be empty, so books without an author are not counted in the author facets
+        if (!book.author().isBlank()) {
+            document.add(new SortedSetDocValuesFacetField(FieldName.AUTHOR.value(), book.author()));
+        }
+        return FACETS_CONFIG.build(document);
+    }
+
+    @FunctionalInterface
+    private interface Indexer<T> {
+        void index(final T item) throws IOException;
+    }
+
+    /**
+     * The state of a book file, used to decide if the file has changed since it was indexed.
+     */
+    private record FileState(long size, long modified) {
+        static FileState of(final BasicFileAttributes attributes) {
+            return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * The metrics of an {@link IndexServiceImpl}, published as an MBean. The latencies of commits and
+ * book file reads are published as separate {@link LatencyMBean}s.
+ */
+public interface IndexServiceMBean {
+
+    /**
+     * Returns the number of documents added or updated.
+     */
+    long getDocumentsIndexed();
+
+    /**
+     * Returns the number of bytes read from book files.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of segments in the last commit.
+     */
+    int getSegmentCount();
+
+    /**
+     * Returns the size on disk of the index, including files that are not yet committed.
+     */
+    long getIndexSizeBytes();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+
+/**
+ * Statistics from an indexing run.
+ *
+ * @param documents The number of documents indexed.
+ * @param elapsed The time it took to index the documents, including the final commit.
+ */
+public record IndexStats(long documents, Duration elapsed) {
+
+    public double documentsPerSecond() {
+        final long nanos = elapsed.toNanos();
+        return nanos > 0 ? documents * 1_000_000_000.0 / nanos : 0.0;
+    }
+}
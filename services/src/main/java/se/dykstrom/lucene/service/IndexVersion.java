@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.Comparator;
+
+/**
+ * The version of the index that a searcher searches. The reader version increases with every change
+ * to the index, but starts over when the index is rebuilt into a new generation, so versions are ordered
+ * by generation first.
+ *
+ * @param generation The number of the index generation.
+ * @param readerVersion The reader version within the generation, which is the sum of the versions of all shards.
+ */
+record IndexVersion(long generation, long readerVersion) implements Comparable<IndexVersion> {
+
+    private static final Comparator<IndexVersion> ORDER =
+            Comparator.comparingLong(IndexVersion::generation).thenComparingLong(IndexVersion::readerVersion);
+
+    @Override
+    public int compareTo(final IndexVersion other) {
+        return ORDER.compare(this, other);
+    }
+}
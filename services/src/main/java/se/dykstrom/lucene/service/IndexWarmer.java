@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.lucene.index.IndexWriter;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Warms up an index after a restart, so that the first searches are not slowed down by cold caches.
+ * The warmer reads all index files, so that the operating system has them in its page cache. It then runs
+ * representative queries through the query service, in every sort order, with facets. This loads the terms,
+ * doc values, and facet state that later searches need, and fills the result cache.
+ * <p>
+ * The warm-up runs in a background thread, and the returned future tells the caller when it is done.
+ * Queries that fail are logged and counted, but do not stop the warm-up.
+ */
+public class IndexWarmer {
+
+    private static final System.Logger LOGGER = System.getLogger(IndexWarmer.class.getName());
+
+    private static final int PAGE_SIZE = 20;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final List<BookSort> SORTS = List.of(
+            BookSort.RELEVANCE,
+            BookSort.ascending(BookSort.Key.AUTHOR),
+            BookSort.ascending(BookSort.Key.TITLE),
+            BookSort.descending(BookSort.Key.PAGES)
+    );
+
+    private final Path indexPath;
+    private final QueryService queryService;
+    private final WarmUpConfig config;
+
+    public IndexWarmer(final Path indexPath, final QueryService queryService, final WarmUpConfig config) {
+        this.indexPath = requireNonNull(indexPath);
+        this.queryService = requireNonNull(queryService);
+        this.config = requireNonNull(config);
+    }
+
+    /**
+     * Starts warming up the index in a background thread, and returns at once. The returned future
+     * completes when the warm-up is done. Cancelling the future stops the warm-up after the current step.
+     */
+    public CompletableFuture<WarmUpStats> start() {
+        final var result = new CompletableFuture<WarmUpStats>();
+        new DaemonThreadFactory("index-warmer").newThread(() -> warmUp(result)).start();
+        return result;
+    }
+
+    private void warmUp(final CompletableFuture<WarmUpStats> result) {
+        final long start = System.nanoTime();
+        try {
+            int files = 0;
+            long bytes = 0;
+            if (config.preloadFiles()) {
+                for (final Path file : listIndexFiles()) {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    final long size = readFile(file);
+                    if (size >= 0) {
+                        files++;
+                        bytes += size;
+                    }
+                }
+            }
+
+            int queries = 0;
+            int failedQueries = 0;
+            for (final String query : readQueries()) {
+                if (result.isDone()) {
+                    return;
+                }
+                queries++;
+                if (!runQuery(query)) {
+                    failedQueries++;
+                }
+            }
+
+            final var elapsed = Duration.ofNanos(System.nanoTime() - start);
+            final var stats = new WarmUpStats(files, bytes, queries, failedQueries, elapsed);
+            LOGGER.log(Level.INFO, "Warmed up index " + indexPath + " in " + stats.elapsed().toMillis() + " ms");
+            result.complete(stats);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Returns the files in the current generation of the index, including the directories of its shards,
+     * or an empty list if there is no index yet.
+     */
+    private List<Path> listIndexFiles() {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(IndexGeneration.current(indexPath).path())) {
+            for (final Path path : stream) {
+                if (Shards.isShard(path)) {
+                    try (DirectoryStream<Path> shardStream = Files.newDirectoryStream(path, Files::isRegularFile)) {
+                        shardStream.forEach(file -> addIndexFile(file, files));
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    addIndexFile(path, files);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to list index files in " + indexPath, e);
+        }
+        return files;
+    }
+
+    private static void addIndexFile(final Path file, final List<Path> files) {
+        if (!file.getFileName().toString().equals(IndexWriter.WRITE_LOCK_NAME)) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Reads the given file from start to end, and returns its size, or -1 if it could not be read.
+     * A file may have been deleted by a merge since it was listed.
+     */
+    private static long readFile(final Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long size = 0;
+            int count;
+            while ((count = channel.read(buffer)) > 0) {
+                size += count;
+                buffer.clear();
+            }
+            return size;
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read index file " + file, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the configured queries, followed by the queries in the query log, if there is one.
+     */
+    private List<String> readQueries() {
+        final List<String> queries = new ArrayList<>(config.queries());
+        if (config.queryLog() != null) {
+            try {
+                for (final String line : Files.readAllLines(config.queryLog())) {
+                    final String query = line.strip();
+                    if (!query.isEmpty() && !query.startsWith("#")) {
+                        queries.add(query);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read query log " + config.queryLog(), e);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Runs the given query in every sort order, and returns true if it succeeded.
+     */
+    private boolean runQuery(final String query) {
+        try {
+            for (final BookSort sort : SORTS) {
+                final var request = PageRequest.first(PAGE_SIZE, sort);
+                queryService.findReferencesByQuery(query, sort == BookSort.RELEVANCE ? request.withFacets() : request);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to run warm-up query: " + query, e);
+            return false;
+        }
+    }
+}
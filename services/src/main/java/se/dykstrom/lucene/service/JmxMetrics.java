@@ -0,0 +1,205 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.lucene.index.IndexNotFoundException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes the metrics of the query and index services as MBeans on the platform MBean server.
+ * Each service gets one MBean with its counters, and one {@link LatencyMBean} per timed operation,
+ * for example {@code se.dykstrom.lucene:type=QueryService,name=books,latency=findReferencesByQuery}.
+ * <p>
+ * Recording metrics does not lock or allocate. The segment count and index size are read from
+ * the index when they are asked for.
+ */
+public final class JmxMetrics {
+
+    public static final String DOMAIN = "se.dykstrom.lucene";
+
+    private JmxMetrics() { }
+
+    /**
+     * Registers the MBeans of a query service.
+     *
+     * @param name The name of the service, used in the object names.
+     * @param service The service to publish metrics for.
+     * @return A handle that unregisters the MBeans when it is closed.
+     */
+    public static Closeable register(final String name, final QueryServiceImpl service) {
+        requireNonNull(service);
+        final var bean = new QueryServiceMBean() {
+            @Override
+            public long getHits() {
+                return service.metrics().hits.sum();
+            }
+
+            @Override
+            public long getCacheHits() {
+                return service.cacheStats().hits();
+            }
+
+            @Override
+            public long getCacheMisses() {
+                return service.cacheStats().misses();
+            }
+
+            @Override
+            public int getCacheSize() {
+                return service.cacheStats().size();
+            }
+
+            @Override
+            public int getSegmentCount() {
+                try {
+                    return service.segmentCount();
+                } catch (IndexNotFoundException e) {
+                    return 0;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public long getIndexSizeBytes() {
+                try {
+                    return service.indexSizeBytes();
+                } catch (IndexNotFoundException e) {
+                    return 0;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return register("QueryService", name, new StandardMBean(bean, QueryServiceMBean.class, false),
+                service.metrics().latencies());
+    }
+
+    /**
+     * Registers the MBeans of an index service.
+     *
+     * @param name The name of the service, used in the object names.
+     * @param service The service to publish metrics for.
+     * @return A handle that unregisters the MBeans when it is closed.
+     */
+    public static Closeable register(final String name, final IndexServiceImpl service) {
+        requireNonNull(service);
+        final var bean = new IndexServiceMBean() {
+            @Override
+            public long getDocumentsIndexed() {
+                return service.metrics().documentsIndexed.sum();
+            }
+
+            @Override
+            public long getBytesRead() {
+                return service.metrics().bytesRead.sum();
+            }
+
+            @Override
+            public int getSegmentCount() {
+                try {
+                    return service.segmentCount();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public long getIndexSizeBytes() {
+                try {
+                    return service.indexSizeBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return register("IndexService", name, new StandardMBean(bean, IndexServiceMBean.class, false),
+                service.metrics().latencies());
+    }
+
+    /**
+     * Returns the object name of the MBean of a service with the given type and name.
+     */
+    public static ObjectName objectName(final String type, final String name) {
+        return objectName(type, name, null);
+    }
+
+    /**
+     * Returns the object name of a latency MBean of a service with the given type and name.
+     */
+    public static ObjectName objectName(final String type, final String name, final String latency) {
+        requireNonNull(type);
+        requireNonNull(name);
+        final var builder = new StringBuilder(DOMAIN).append(":type=").append(type)
+                .append(",name=").append(ObjectName.quote(name));
+        if (latency != null) {
+            builder.append(",latency=").append(latency);
+        }
+        try {
+            return new ObjectName(builder.toString());
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("invalid MBean name: " + builder, e);
+        }
+    }
+
+    private static Closeable register(final String type,
+                                      final String name,
+                                      final StandardMBean bean,
+                                      final Map<String, LatencyHistogram> latencies) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final List<ObjectName> registered = new ArrayList<>();
+        final Closeable handle = () -> unregister(server, registered);
+        try {
+            registered.add(server.registerMBean(bean, objectName(type, name)).getObjectName());
+            for (final var entry : latencies.entrySet()) {
+                final var latencyBean = new StandardMBean(entry.getValue(), LatencyMBean.class, false);
+                final var objectName = objectName(type, name, entry.getKey());
+                registered.add(server.registerMBean(latencyBean, objectName).getObjectName());
+            }
+        } catch (JMException e) {
+            unregister(server, registered);
+            throw new IllegalStateException("failed to register MBeans for " + type + " " + name, e);
+        }
+        return handle;
+    }
+
+    private static void unregister(final MBeanServer server, final List<ObjectName> names) {
+        for (final ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+        }
+        names.clear();
+    }
+}
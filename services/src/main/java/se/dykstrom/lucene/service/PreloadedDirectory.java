@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * A directory that keeps a copy of the index files in memory, and writes through to a directory on disk.
+ * All existing files are loaded when the directory is opened, and new files are loaded the first time
+ * they are read. Lucene never changes a file once it has been written, so the copy in memory never
+ * gets stale. Files that have been deleted on disk, by this directory or by another process, are
+ * dropped from memory the next time the files are listed.
+ */
+final class PreloadedDirectory extends FilterDirectory {
+
+    private final ByteBuffersDirectory cache = new ByteBuffersDirectory();
+
+    // Guarded by this
+    private final Set<String> cachedFiles = new HashSet<>();
+
+    private PreloadedDirectory(final Directory in) {
+        super(in);
+    }
+
+    /**
+     * Opens the directory at the given path, and loads all its index files into memory.
+     */
+    static PreloadedDirectory open(final Path path) throws IOException {
+        final var directory = new PreloadedDirectory(FSDirectory.open(path));
+        try {
+            for (final String name : directory.listAll()) {
+                if (!name.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                    directory.load(name);
+                }
+            }
+            return directory;
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(directory);
+            throw e;
+        }
+    }
+
+    @Override
+    public String[] listAll() throws IOException {
+        final String[] names = in.listAll();
+        synchronized (this) {
+            for (final String name : List.copyOf(cachedFiles)) {
+                // The names are sorted, as required by Directory.listAll
+                if (Arrays.binarySearch(names, name) < 0) {
+                    drop(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized IndexInput openInput(final String name, final IOContext context) throws IOException {
+        load(name);
+        return cache.openInput(name, context);
+    }
+
+    @Override
+    public void deleteFile(final String name) throws IOException {
+        in.deleteFile(name);
+        drop(name);
+    }
+
+    @Override
+    public void rename(final String source, final String dest) throws IOException {
+        in.rename(source, dest);
+        drop(source);
+        drop(dest);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOUtils.close(in, cache);
+    }
+
+    /**
+     * Copies the given file into memory, unless it is there already.
+     */
+    private synchronized void load(final String name) throws IOException {
+        if (!cachedFiles.contains(name)) {
+            cache.copyFrom(in, name, name, IOContext.READONCE);
+            cachedFiles.add(name);
+        }
+    }
+
+    /**
+     * Removes the given file from memory. Inputs that are already open on the file can still read it.
+     */
+    private synchronized void drop(final String name) throws IOException {
+        if (cachedFiles.remove(name)) {
+            cache.deleteFile(name);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration for a {@link QueryServiceImpl}.
+ *
+ * @param refreshInterval The interval between background checks for index changes.
+ * @param cacheSize The maximum number of hits in all cached query results together, or 0 to disable
+ *                  the result cache. A result without hits counts as one hit.
+ * @param searchThreads The number of threads that search the slices of a large index in parallel,
+ *                      or 1 to search all slices in the calling thread.
+ * @param directoryType How the index files are accessed.
+ * @param slowQueryThreshold Queries that take at least this long are reported as slow queries.
+ * @param profileSampleRate The share of queries, between 0 and 1, that are profiled in detail and reported
+ *                          as slow queries whatever time they take, or 0 to profile no queries.
+ * @param shards The number of shards that the index is divided into, which must be the same as in the
+ *               {@link IndexConfig} that the index was built with.
+ */
+public record QueryConfig(Duration refreshInterval,
+                          int cacheSize,
+                          int searchThreads,
+                          DirectoryType directoryType,
+                          Duration slowQueryThreshold,
+                          double profileSampleRate,
+                          int shards) {
+
+    public static final QueryConfig DEFAULT = new QueryConfig(
+            Duration.ofSeconds(1),
+            10_000,
+            Runtime.getRuntime().availableProcessors(),
+            DirectoryType.AUTO,
+            Duration.ofMillis(500),
+            0.0,
+            1
+    );
+
+    public QueryConfig {
+        requireNonNull(refreshInterval);
+        requireNonNull(directoryType);
+        requireNonNull(slowQueryThreshold);
+        if (refreshInterval.isNegative() || refreshInterval.isZero()) {
+            throw new IllegalArgumentException("refresh interval must be positive: " + refreshInterval);
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cache size must not be negative: " + cacheSize);
+        }
+        if (searchThreads <= 0) {
+            throw new IllegalArgumentException("search threads must be positive: " + searchThreads);
+        }
+        if (slowQueryThreshold.isNegative()) {
+            throw new IllegalArgumentException("slow query threshold must not be negative: " + slowQueryThreshold);
+        }
+        if (!(profileSampleRate >= 0.0 && profileSampleRate <= 1.0)) {
+            throw new IllegalArgumentException("profile sample rate must be between 0 and 1: " + profileSampleRate);
+        }
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+    }
+
+    public QueryConfig withRefreshInterval(final Duration refreshInterval) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withCacheSize(final int cacheSize) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withSearchThreads(final int searchThreads) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withDirectoryType(final DirectoryType directoryType) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withSlowQueryThreshold(final Duration slowQueryThreshold) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withProfileSampleRate(final double profileSampleRate) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+
+    public QueryConfig withShards(final int shards) {
+        return new QueryConfig(refreshInterval, cacheSize, searchThreads, directoryType,
+                slowQueryThreshold, profileSampleRate, shards);
+    }
+}
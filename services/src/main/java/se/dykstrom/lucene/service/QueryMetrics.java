@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics recorded by a {@link QueryServiceImpl}. There is one latency histogram per query method,
+ * named after the method. The paged variants of the finders are named {@code findReferencePageBy...}.
+ */
+final class QueryMetrics {
+
+    final LatencyHistogram findBookByIsbn = new LatencyHistogram();
+    final LatencyHistogram findBooksByAuthor = new LatencyHistogram();
+    final LatencyHistogram findBooksByPagesRange = new LatencyHistogram();
+    final LatencyHistogram findReferencesByAuthor = new LatencyHistogram();
+    final LatencyHistogram findReferencesByDescription = new LatencyHistogram();
+    final LatencyHistogram findReferencesByFields = new LatencyHistogram();
+    final LatencyHistogram findReferencePageByFields = new LatencyHistogram();
+    final LatencyHistogram streamReferencesByFields = new LatencyHistogram();
+    final LatencyHistogram findReferencesByQuery = new LatencyHistogram();
+    final LatencyHistogram findReferencePageByQuery = new LatencyHistogram();
+    final LatencyHistogram streamReferencesByQuery = new LatencyHistogram();
+
+    /** The time it takes to load the stored fields of one document. */
+    final LatencyHistogram storedFields = new LatencyHistogram();
+
+    /** The time it takes to read one book file. */
+    final LatencyHistogram readBook = new LatencyHistogram();
+
+    /** The total number of hits found by searches that were not answered from the cache. */
+    final LongAdder hits = new LongAdder();
+
+    /**
+     * Returns all latency histograms, by name.
+     */
+    Map<String, LatencyHistogram> latencies() {
+        final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        latencies.put("findBookByIsbn", findBookByIsbn);
+        latencies.put("findBooksByAuthor", findBooksByAuthor);
+        latencies.put("findBooksByPagesRange", findBooksByPagesRange);
+        latencies.put("findReferencesByAuthor", findReferencesByAuthor);
+        latencies.put("findReferencesByDescription", findReferencesByDescription);
+        latencies.put("findReferencesByFields", findReferencesByFields);
+        latencies.put("findReferencePageByFields", findReferencePageByFields);
+        latencies.put("streamReferencesByFields", streamReferencesByFields);
+        latencies.put("findReferencesByQuery", findReferencesByQuery);
+        latencies.put("findReferencePageByQuery", findReferencePageByQuery);
+        latencies.put("streamReferencesByQuery", streamReferencesByQuery);
+        latencies.put("storedFields", storedFields);
+        latencies.put("readBook", readBook);
+        return latencies;
+    }
+}
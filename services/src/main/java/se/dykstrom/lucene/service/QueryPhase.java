@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * The phases of a query that are timed separately in a {@link SlowQuery}.
+ */
+public enum QueryPhase {
+    /** Parsing the query text, or building the query from the search fields. */
+    PARSE,
+    /** Rewriting the query into primitive queries, for example expanding wildcards and fuzzy terms. */
+    REWRITE,
+    /** Matching, scoring, and collecting the hits. */
+    SEARCH,
+    /** Counting the facets of the hits. */
+    FACETS,
+    /** Loading the stored fields of the hits. */
+    STORED_FIELDS,
+    /** Reading book files for hits whose books are not stored in the index. */
+    READ_BOOK
+}
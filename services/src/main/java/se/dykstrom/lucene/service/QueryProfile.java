@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The profile of one node in a query tree, as measured by Lucene's query profiler.
+ *
+ * @param type The type of the query, for example "TermQuery".
+ * @param description The query itself.
+ * @param time The total time spent in this query, including its children.
+ * @param breakdown The time spent in each of Lucene's timing types, in nanoseconds,
+ *                  and the number of times each was called.
+ * @param children The profiles of the sub queries.
+ */
+public record QueryProfile(String type,
+                           String description,
+                           Duration time,
+                           Map<String, Long> breakdown,
+                           List<QueryProfile> children) {
+
+    public QueryProfile {
+        requireNonNull(type);
+        requireNonNull(description);
+        requireNonNull(time);
+        breakdown = Map.copyOf(breakdown);
+        children = List.copyOf(children);
+    }
+}
@@ -16,14 +16,18 @@
 
 package se.dykstrom.lucene.service;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import se.dykstrom.lucene.model.Book;
 import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
 
-public interface QueryService {
+public interface QueryService extends Closeable {
 
     Optional<Book> findBookByIsbn(final String isbn) throws IOException;
 
@@ -41,5 +45,76 @@ public interface QueryService {
                                                final int minPages,
                                                final int maxPages) throws IOException;
 
+    /**
+     * Returns one page of the references found by {@link #findReferencesByFields(String, String, String, int, int)}.
+     */
+    default ReferencePage findReferencesByFields(final String author,
+                                                 final String title,
+                                                 final String description,
+                                                 final int minPages,
+                                                 final int maxPages,
+                                                 final PageRequest page) throws IOException {
+        return findReferencesByFields(author, title, description, minPages, maxPages, page, new Cancellation());
+    }
+
+    /**
+     * Returns one page of the references found by {@link #findReferencesByFields(String, String, String, int, int)}.
+     * If the given cancellation signal is cancelled while searching, the search stops, and this method throws
+     * a {@link java.util.concurrent.CancellationException}.
+     */
+    ReferencePage findReferencesByFields(final String author,
+                                         final String title,
+                                         final String description,
+                                         final int minPages,
+                                         final int maxPages,
+                                         final PageRequest page,
+                                         final Cancellation cancellation) throws IOException;
+
+    /**
+     * Returns a stream of the references found by {@link #findReferencesByFields(String, String, String, int, int)},
+     * see {@link #streamReferencesByQuery(String)}.
+     */
+    Stream<BookReference> streamReferencesByFields(final String author,
+                                                   final String title,
+                                                   final String description,
+                                                   final int minPages,
+                                                   final int maxPages) throws IOException;
+
     List<BookReference> findReferencesByQuery(final String text) throws IOException;
+
+    /**
+     * Returns a stream of the references found by {@link #findReferencesByQuery(String)}, in the same order.
+     * The hits are found when this method is called, but the stored fields of each hit are loaded only
+     * when the stream reaches it. This makes the stream suitable for exporting large result sets.
+     * <p>
+     * The stream holds on to the index reader it searched until it is closed, so it must always be closed,
+     * preferably in a try-with-resources statement. An I/O error while loading a hit is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     */
+    Stream<BookReference> streamReferencesByQuery(final String text) throws IOException;
+
+    /**
+     * Returns one page of the references found by {@link #findReferencesByQuery(String)}.
+     */
+    default ReferencePage findReferencesByQuery(final String text, final PageRequest page) throws IOException {
+        return findReferencesByQuery(text, page, new Cancellation());
+    }
+
+    /**
+     * Returns one page of the references found by {@link #findReferencesByQuery(String)}.
+     * If the given cancellation signal is cancelled while searching, the search stops, and this method throws
+     * a {@link java.util.concurrent.CancellationException}.
+     */
+    ReferencePage findReferencesByQuery(final String text, final PageRequest page, final Cancellation cancellation)
+            throws IOException;
+
+    /**
+     * Makes sure that subsequent queries see all changes committed to the index before this call.
+     */
+    void refresh() throws IOException;
+
+    /**
+     * Returns statistics from the result cache.
+     */
+    CacheStats cacheStats();
 }
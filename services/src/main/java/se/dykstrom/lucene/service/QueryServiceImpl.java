@@ -17,93 +17,218 @@
 package se.dykstrom.lucene.service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.range.LongRangeFacetCounts;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiCollectorManager;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookFacets;
 import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.FacetCount;
 import se.dykstrom.lucene.model.FieldName;
+import se.dykstrom.lucene.model.PageRangeCount;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+import se.dykstrom.lucene.service.SearcherSource.SearcherFunction;
 
 import static java.util.Objects.requireNonNull;
 import static org.apache.lucene.search.BooleanClause.Occur.MUST;
+import static org.apache.lucene.search.BooleanClause.Occur.SHOULD;
 
+/**
+ * A query service that keeps one long-lived searcher for the index. The searcher is opened on first use,
+ * and refreshed in the background when the index changes. Searches acquire the current searcher,
+ * and release it when done, so that a refresh never closes a searcher that is still in use.
+ * <p>
+ * If the index is divided into shards, all shards are searched concurrently, and the hits are ranked together.
+ * Lookups by ISBN only search the shard that owns the ISBN.
+ * <p>
+ * The results of the finders that users repeat most often are cached. Cached results are keyed on the parsed
+ * query, and are dropped as soon as a searcher on a newer index version is acquired. The size of the cache is
+ * the number of hits in the cached results, so that results with many hits take up more of it.
+ * <p>
+ * Each call is traced, and calls that take at least the slow query threshold are reported to the slow query
+ * listener, with the time spent in each {@link QueryPhase}. A sampled share of the calls are also profiled
+ * with Lucene's query profiler, and reported whatever time they take.
+ */
 public class QueryServiceImpl implements QueryService {
 
-    private static final int PAGE_SIZE = 10;
+    private static final System.Logger LOGGER = System.getLogger(QueryServiceImpl.class.getName());
+
+    private static final int MAX_AUTHOR_FACETS = 10;
+
+    // The share of the n-grams in each word of an author query that must match, with room for about two typos
+    // in a word; the candidates are then verified by edit distance, see FuzzyAuthorQuery
+    private static final double AUTHOR_GRAM_MATCH_RATIO = 0.4;
+
+    // A single typo in the middle of a shorter word may change all its n-grams, so it is matched by a fuzzy query
+    private static final int MIN_AUTHOR_GRAMS_WORD_LENGTH = 2 * BookAnalyzers.AUTHOR_GRAM_SIZE;
+
+    private static final LongRange[] PAGE_RANGES = {
+            createPageRange(0, 99),
+            createPageRange(100, 199),
+            createPageRange(200, 299),
+            createPageRange(300, 499),
+            createPageRange(500, 999),
+            createPageRange(1000, Integer.MAX_VALUE)
+    };
+
+    private static final Set<String> REFERENCE_FIELDS = Set.of(
+            FieldName.ISBN.value(),
+            FieldName.AUTHOR.value(),
+            FieldName.TITLE.value(),
+            FieldName.PATH.value()
+    );
 
-    private final Analyzer analyzer = new StandardAnalyzer();
-    private final Path indexPath;
+    private final Analyzer analyzer = BookAnalyzers.create();
     private final FileService fileService;
+    private final QueryConfig config;
+    private final SearcherSource searcherSource;
+    private final ResultCache<CacheKey, Object> cache;
+    private final QueryMetrics metrics = new QueryMetrics();
+    private volatile SlowQueryListener slowQueryListener = new SlowQueryLog();
+    private final Object facetLock = new Object();
+
+    // Guarded by facetLock
+    private SortedSetDocValuesReaderState facetState;
 
     public QueryServiceImpl(final Path indexPath) {
         this(indexPath, new FileServiceImpl());
     }
 
     public QueryServiceImpl(final Path indexPath, final FileService fileService) {
-        this.indexPath = requireNonNull(indexPath);
+        this(indexPath, fileService, QueryConfig.DEFAULT);
+    }
+
+    public QueryServiceImpl(final Path indexPath, final FileService fileService, final QueryConfig config) {
         this.fileService = requireNonNull(fileService);
+        this.config = requireNonNull(config);
+        this.searcherSource = new SearcherSource(
+                indexPath,
+                config.shards(),
+                config.directoryType(),
+                config.refreshInterval(),
+                config.searchThreads(),
+                "query service"
+        );
+        this.cache = config.cacheSize() > 0 ? new ResultCache<>(config.cacheSize(), QueryServiceImpl::weigh) : null;
     }
 
     @Override
     public Optional<Book> findBookByIsbn(final String isbn) throws IOException {
-        final var query = new TermQuery(new Term(FieldName.ISBN.value(), isbn));
-        final var books = executeBookQuery(query);
+        final QueryTrace trace = startTrace("findBookByIsbn");
+        try {
+            final var query = trace.parsed(new TermQuery(new Term(FieldName.ISBN.value(), isbn)));
+            final var books = executeCachedQuery(new CacheKey("isbn", query, null), trace,
+                    searcher -> searchBooks(shardSearcher(searcher, isbn), query, trace));
 
-        if (books.size() > 1) {
-            throw new IllegalStateException("more than one document matched ISBN " + isbn);
-        } else {
-            return books.stream().findFirst();
+            if (books.size() > 1) {
+                throw new IllegalStateException("more than one document matched ISBN " + isbn);
+            } else {
+                return books.stream().findFirst();
+            }
+        } finally {
+            finishTrace(trace, metrics.findBookByIsbn);
         }
     }
 
     @Override
     public List<Book> findBooksByAuthor(final String author) throws IOException {
-        final var query = new FuzzyQuery(new Term(FieldName.AUTHOR.value(), author.toLowerCase()));
-        return executeBookQuery(query);
+        final QueryTrace trace = startTrace("findBooksByAuthor");
+        try {
+            return executeBookQuery(trace.parsed(createAuthorGramsQuery(author)), trace);
+        } finally {
+            finishTrace(trace, metrics.findBooksByAuthor);
+        }
     }
 
     @Override
     public List<Book> findBooksByPagesRange(final int min, final int max) throws IOException {
-        final var query = IntPoint.newRangeQuery(FieldName.PAGES.value(), min, max);
-        return executeBookQuery(query);
+        final QueryTrace trace = startTrace("findBooksByPagesRange");
+        try {
+            final var query = trace.parsed(IntPoint.newRangeQuery(FieldName.PAGES.value(), min, max));
+            return executeBookQuery(query, trace);
+        } finally {
+            finishTrace(trace, metrics.findBooksByPagesRange);
+        }
     }
 
     @Override
     public List<BookReference> findReferencesByAuthor(final String author) throws IOException {
-        final var query = new TermQuery(new Term(FieldName.AUTHOR.value(), author.toLowerCase()));
-        return executeReferenceQuery(query);
+        final QueryTrace trace = startTrace("findReferencesByAuthor");
+        try {
+            final var query = trace.parsed(new TermQuery(new Term(FieldName.AUTHOR.value(), author.toLowerCase())));
+            return executeReferenceQuery(query, trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencesByAuthor);
+        }
     }
 
     @Override
     public List<BookReference> findReferencesByDescription(final String description) throws IOException {
-        // Assume description field contains a sequence of words separated by white space
-        final var terms = description.strip().split("\\s+");
-        final var builder = new PhraseQuery.Builder();
-        // Match even if one (1) word is missing in a phrase
-        builder.setSlop(1);
-        for (int i = 0; i < terms.length; i++) {
-            builder.add(new Term(FieldName.DESCRIPTION.value(), terms[i].toLowerCase()), i);
+        final QueryTrace trace = startTrace("findReferencesByDescription");
+        try {
+            // Assume description field contains a sequence of words separated by white space
+            final var terms = description.strip().split("\\s+");
+            final var builder = new PhraseQuery.Builder();
+            // Match even if one (1) word is missing in a phrase
+            builder.setSlop(1);
+            for (int i = 0; i < terms.length; i++) {
+                builder.add(new Term(FieldName.DESCRIPTION.value(), terms[i].toLowerCase()), i);
+            }
+            final var query = trace.parsed(builder.build());
+            return executeReferenceQuery(query, trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencesByDescription);
         }
-        final var query = builder.build();
-        return executeReferenceQuery(query);
     }
 
     @Override
@@ -112,6 +237,192 @@ public class QueryServiceImpl implements QueryService {
                                                       final String description,
                                                       final int minPages,
                                                       final int maxPages) throws IOException {
+        final QueryTrace trace = startTrace("findReferencesByFields");
+        try {
+            final var query = trace.parsed(createFieldsQuery(author, title, description, minPages, maxPages));
+            return executeCachedReferenceQuery(query, trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencesByFields);
+        }
+    }
+
+    @Override
+    public ReferencePage findReferencesByFields(final String author,
+                                                final String title,
+                                                final String description,
+                                                final int minPages,
+                                                final int maxPages,
+                                                final PageRequest page,
+                                                final Cancellation cancellation) throws IOException {
+        final QueryTrace trace = startTrace("findReferencePageByFields");
+        try {
+            final var query = trace.parsed(createFieldsQuery(author, title, description, minPages, maxPages));
+            return executeCachedReferencePageQuery(query, page, cancellation, trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencePageByFields);
+        }
+    }
+
+    @Override
+    public Stream<BookReference> streamReferencesByFields(final String author,
+                                                          final String title,
+                                                          final String description,
+                                                          final int minPages,
+                                                          final int maxPages) throws IOException {
+        final QueryTrace trace = startTrace("streamReferencesByFields");
+        try {
+            final var query = trace.parsed(createFieldsQuery(author, title, description, minPages, maxPages));
+            return executeStreamingReferenceQuery(query, trace);
+        } finally {
+            finishTrace(trace, metrics.streamReferencesByFields);
+        }
+    }
+
+    @Override
+    public List<BookReference> findReferencesByQuery(final String text) throws IOException {
+        final QueryTrace trace = startTrace("findReferencesByQuery");
+        try {
+            return executeCachedReferenceQuery(trace.parsed(parseQuery(text)), trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencesByQuery);
+        }
+    }
+
+    @Override
+    public Stream<BookReference> streamReferencesByQuery(final String text) throws IOException {
+        final QueryTrace trace = startTrace("streamReferencesByQuery");
+        try {
+            return executeStreamingReferenceQuery(trace.parsed(parseQuery(text)), trace);
+        } finally {
+            finishTrace(trace, metrics.streamReferencesByQuery);
+        }
+    }
+
+    @Override
+    public ReferencePage findReferencesByQuery(final String text,
+                                               final PageRequest page,
+                                               final Cancellation cancellation) throws IOException {
+        final QueryTrace trace = startTrace("findReferencePageByQuery");
+        try {
+            return executeCachedReferencePageQuery(trace.parsed(parseQuery(text)), page, cancellation, trace);
+        } finally {
+            finishTrace(trace, metrics.findReferencePageByQuery);
+        }
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        searcherSource.refresh();
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        return cache != null ? cache.stats() : CacheStats.EMPTY;
+    }
+
+    /**
+     * Returns the metrics recorded by this service.
+     */
+    QueryMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of segments in the index that the current searcher searches.
+     */
+    int segmentCount() throws IOException {
+        return withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+    }
+
+    /**
+     * Returns the size on disk of the index that the current searcher searches, including all shards.
+     */
+    long indexSizeBytes() throws IOException {
+        return withSearcher(searcher -> {
+            long size = 0;
+            for (final DirectoryReader reader : SearcherSource.shardReaders(searcher)) {
+                final Directory directory = reader.directory();
+                for (final String file : reader.getIndexCommit().getFileNames()) {
+                    size += directory.fileLength(file);
+                }
+            }
+            return size;
+        });
+    }
+
+    /**
+     * Sets the listener that receives slow queries. The default listener is a {@link SlowQueryLog}.
+     */
+    public void setSlowQueryListener(final SlowQueryListener slowQueryListener) {
+        this.slowQueryListener = requireNonNull(slowQueryListener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.clear();
+        }
+        searcherSource.close();
+    }
+
+    private <T> T withSearcher(final SearcherFunction<T> function) throws IOException {
+        return searcherSource.withSearcher(function);
+    }
+
+    /**
+     * Starts the trace of a call to the given method. A share of the traces, given by the profile
+     * sample rate, are profiled.
+     */
+    private QueryTrace startTrace(final String method) {
+        final double sampleRate = config.profileSampleRate();
+        final boolean profiled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        return new QueryTrace(method, profiled);
+    }
+
+    /**
+     * Records the latency of the traced call, and reports it as a slow query if it took at least
+     * the slow query threshold, or if it was profiled. Failed calls are reported too.
+     */
+    private void finishTrace(final QueryTrace trace, final LatencyHistogram latency) {
+        final long elapsed = trace.elapsedNanos();
+        latency.record(elapsed);
+        if (elapsed >= config.slowQueryThreshold().toNanos() || trace.profiled()) {
+            try {
+                slowQueryListener.onSlowQuery(trace.toSlowQuery(elapsed));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to report slow query", e);
+            }
+        }
+    }
+
+    /**
+     * Returns a searcher for the shard that owns the book with the given ISBN, or the given searcher
+     * if the index is not sharded.
+     */
+    private static IndexSearcher shardSearcher(final IndexSearcher searcher, final String isbn) {
+        if (searcher instanceof ShardedIndexSearcher sharded) {
+            return sharded.shard(Shards.shardOf(isbn, sharded.shardCount()));
+        }
+        return searcher;
+    }
+
+    /**
+     * Rewrites the query, and records the rewritten query and the time it took in the trace.
+     * The searcher rewrites the query again when it is searched, but a rewritten query rewrites to itself.
+     */
+    private static Query rewrite(final IndexSearcher searcher, final Query query, final QueryTrace trace)
+            throws IOException {
+        final long start = System.nanoTime();
+        final Query rewritten = searcher.rewrite(query);
+        trace.rewritten(rewritten, start);
+        return rewritten;
+    }
+
+    private Query createFieldsQuery(final String author,
+                                    final String title,
+                                    final String description,
+                                    final int minPages,
+                                    final int maxPages) {
         final var builder = new BooleanQuery.Builder();
         if (!author.isBlank()) {
             builder.add(new TermQuery(new Term(FieldName.AUTHOR.value(), author.toLowerCase())), MUST);
@@ -129,59 +440,405 @@ public class QueryServiceImpl implements QueryService {
         if (query.clauses().isEmpty()) {
             throw new IllegalArgumentException("all fields are empty or 0");
         }
-        return executeReferenceQuery(query);
+        return query;
     }
 
-    @Override
-    public List<BookReference> findReferencesByQuery(final String text) throws IOException {
+    /**
+     * Creates a query that finds books by authors whose names are spelled almost like the given name.
+     * Each word in the given name must match some of its n-grams, and be within a few edits of a word
+     * in the author name. Short words are matched by a fuzzy query instead of their n-grams. The author
+     * n-gram field also contains the whole words, so the fuzzy query only has to look in one field.
+     */
+    private Query createAuthorGramsQuery(final String author) throws IOException {
+        final List<String> words = BookAnalyzers.authorWords(author);
+        if (words.isEmpty()) {
+            return new MatchNoDocsQuery("no words in author name");
+        }
+        final var builder = new BooleanQuery.Builder();
+        for (final String word : words) {
+            final int maxEdits = FuzzyAuthorQuery.maxEdits(word);
+            if (maxEdits > 0 && word.codePointCount(0, word.length()) < MIN_AUTHOR_GRAMS_WORD_LENGTH) {
+                builder.add(new FuzzyQuery(new Term(FieldName.AUTHOR_GRAMS.value(), word), maxEdits), MUST);
+            } else {
+                builder.add(createWordGramsQuery(word), MUST);
+            }
+        }
+        return new FuzzyAuthorQuery(builder.build(), FieldName.AUTHOR.value(), words);
+    }
+
+    private Query createWordGramsQuery(final String word) throws IOException {
+        final String field = FieldName.AUTHOR_GRAMS.value();
+        final Set<String> grams = new LinkedHashSet<>();
+        try (TokenStream stream = analyzer.tokenStream(field, word)) {
+            final CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                grams.add(termAttribute.toString());
+            }
+            stream.end();
+        }
+        final var builder = new BooleanQuery.Builder();
+        for (final String gram : grams) {
+            builder.add(new TermQuery(new Term(field, gram)), SHOULD);
+        }
+        builder.setMinimumNumberShouldMatch(Math.max(1, (int) (grams.size() * AUTHOR_GRAM_MATCH_RATIO)));
+        return builder.build();
+    }
+
+    private Query parseQuery(final String text) {
         QueryParser parser = new QueryParser(FieldName.DESCRIPTION.value(), analyzer);
         try {
-            Query query = parser.parse(text);
-            return executeReferenceQuery(query);
+            return parser.parse(text);
         } catch (ParseException e) {
             throw new IllegalArgumentException("invalid query: " + text);
         }
     }
 
-    private List<Book> executeBookQuery(final Query query) throws IOException {
-        try (final Directory directory = FSDirectory.open(indexPath);
-             final DirectoryReader reader = DirectoryReader.open(directory)) {
-            final var searcher = new IndexSearcher(reader);
-            final List<Book> books = new ArrayList<>();
+    private List<Book> executeBookQuery(final Query query, final QueryTrace trace) throws IOException {
+        return withSearcher(searcher -> searchBooks(searcher, query, trace));
+    }
+
+    private List<BookReference> executeReferenceQuery(final Query query, final QueryTrace trace) throws IOException {
+        return withSearcher(searcher -> searchReferences(searcher, query, trace));
+    }
+
+    private List<BookReference> executeCachedReferenceQuery(final Query query, final QueryTrace trace)
+            throws IOException {
+        return executeCachedQuery(new CacheKey("references", query, null), trace,
+                searcher -> searchReferences(searcher, query, trace));
+    }
 
-            ScoreDoc[] hits = searcher.search(query, PAGE_SIZE).scoreDocs;
-            while (hits.length > 0) {
-                for (final ScoreDoc hit : hits) {
-                    final var document = searcher.doc(hit.doc);
-                    final var path = Path.of(document.get(FieldName.PATH.value()));
-                    books.add(fileService.readBook(path));
+    /**
+     * Executes the query, and returns a stream that loads the hits one at a time. The searcher stays
+     * acquired until the stream is closed, so that the doc ids of the hits remain valid. The hits are loaded
+     * after the trace has finished, so the time it takes to load them is not part of the trace.
+     */
+    private Stream<BookReference> executeStreamingReferenceQuery(final Query query, final QueryTrace trace)
+            throws IOException {
+        final SearcherSource.Lease lease = searcherSource.acquire();
+        try {
+            final IndexSearcher searcher = lease.searcher();
+            final ScoreDoc[] hits = searchAll(searcher, query, trace);
+            return Arrays.stream(hits)
+                    .map(hit -> loadReference(searcher, hit))
+                    .onClose(() -> release(lease));
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    private ReferencePage executeCachedReferencePageQuery(final Query query,
+                                                          final PageRequest page,
+                                                          final Cancellation cancellation,
+                                                          final QueryTrace trace) throws IOException {
+        requireNonNull(cancellation);
+        final Sort sort = createSort(page.sort());
+        final ScoreDoc after = page.cursor() != null ? Cursors.decode(page.cursor(), sort) : null;
+        return executeCachedQuery(new CacheKey("page", query, page), trace,
+                searcher -> searchReferencePage(searcher, query, page, sort, after, cancellation, trace));
+    }
+
+    /**
+     * Returns the facet counts for the hits collected by the facets collector.
+     */
+    private BookFacets countFacets(final IndexSearcher searcher, final FacetsCollector facetsCollector)
+            throws IOException {
+        final List<FacetCount> authors = new ArrayList<>();
+        final SortedSetDocValuesReaderState state = facetState(searcher.getIndexReader());
+        if (state != null) {
+            final var authorCounts = new SortedSetDocValuesFacetCounts(state, facetsCollector);
+            final FacetResult result = authorCounts.getTopChildren(MAX_AUTHOR_FACETS, FieldName.AUTHOR.value());
+            if (result != null) {
+                for (final LabelAndValue labelAndValue : result.labelValues) {
+                    authors.add(new FacetCount(labelAndValue.label, labelAndValue.value.longValue()));
+                }
+            }
+        }
+
+        final var pageCounts = new LongRangeFacetCounts(FieldName.PAGES.value(), facetsCollector, PAGE_RANGES);
+        final FacetResult result = pageCounts.getTopChildren(PAGE_RANGES.length, FieldName.PAGES.value());
+        final List<PageRangeCount> pageRanges = new ArrayList<>(PAGE_RANGES.length);
+        for (int i = 0; i < PAGE_RANGES.length; i++) {
+            final LongRange range = PAGE_RANGES[i];
+            final long count = result.labelValues[i].value.longValue();
+            pageRanges.add(new PageRangeCount((int) range.min, (int) range.max, count));
+        }
+        return new BookFacets(authors, pageRanges);
+    }
+
+    /**
+     * Returns the facet state for the given reader, or {@code null} if the index has no facets.
+     * Creating the state means reading all facet labels, so it is reused until the reader changes.
+     */
+    private SortedSetDocValuesReaderState facetState(final IndexReader reader) throws IOException {
+        synchronized (facetLock) {
+            if (facetState == null || facetState.getReader() != reader) {
+                facetState = null;
+                for (final var leaf : reader.leaves()) {
+                    if (leaf.reader().getFieldInfos().fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME) != null) {
+                        facetState = new DefaultSortedSetDocValuesReaderState(reader, IndexServiceImpl.FACETS_CONFIG);
+                        break;
+                    }
                 }
-                hits = searcher.searchAfter(hits[hits.length - 1], query, PAGE_SIZE).scoreDocs;
             }
+            return facetState;
+        }
+    }
+
+    /**
+     * Returns the cached result for the key if there is one for the current index version,
+     * and executes the search function and caches its result otherwise.
+     * The cached results must be immutable, since they are shared between callers.
+     * Profiled queries always search the index, so that there is something to profile.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T executeCachedQuery(final CacheKey key,
+                                     final QueryTrace trace,
+                                     final SearcherFunction<T> function) throws IOException {
+        if (cache == null) {
+            return withSearcher(function);
+        }
+        return withSearcher(searcher -> {
+            final IndexVersion version = SearcherSource.version(searcher);
+            final var cachedResult = trace.profiled() ? null : (T) cache.get(version, key);
+            if (cachedResult != null) {
+                trace.cached();
+                return cachedResult;
+            }
+            final T result = function.apply(searcher);
+            cache.put(version, key, result);
+            return result;
+        });
+    }
+
+    /**
+     * Returns the weight of a cached result, which is the number of hits in it. Also a result without hits
+     * weighs one, since its key takes up space in the cache.
+     */
+    private static int weigh(final Object result) {
+        final int hits = result instanceof ReferencePage page ? page.references().size() : ((List<?>) result).size();
+        return Math.max(1, hits);
+    }
 
-            return books;
+    private List<Book> searchBooks(final IndexSearcher searcher, final Query query, final QueryTrace trace)
+            throws IOException {
+        final List<Book> books = new ArrayList<>();
+        for (final ScoreDoc hit : searchAll(searcher, query, trace)) {
+            books.add(createBook(loadDocument(searcher, hit, trace), trace));
         }
+        return books;
     }
 
-    private List<BookReference> executeReferenceQuery(final Query query) throws IOException {
-        try (final Directory directory = FSDirectory.open(indexPath);
-             final DirectoryReader reader = DirectoryReader.open(directory)) {
-            final var searcher = new IndexSearcher(reader);
-            final List<BookReference> references = new ArrayList<>();
+    private List<BookReference> searchReferences(final IndexSearcher searcher,
+                                                 final Query query,
+                                                 final QueryTrace trace) throws IOException {
+        final List<BookReference> references = new ArrayList<>();
+        for (final ScoreDoc hit : searchAll(searcher, query, trace)) {
+            references.add(createReference(searcher, hit, trace));
+        }
+        return List.copyOf(references);
+    }
 
-            ScoreDoc[] hits = searcher.search(query, PAGE_SIZE).scoreDocs;
-            while (hits.length > 0) {
-                for (final ScoreDoc hit : hits) {
-                    final var document = searcher.doc(hit.doc);
-                    final var author = document.get(FieldName.AUTHOR.value());
-                    final var title = document.get(FieldName.TITLE.value());
-                    final var path = Path.of(document.get(FieldName.PATH.value()));
-                    references.add(new BookReference(author, title, path, hit.score));
+    /**
+     * Executes the query, and returns one page of hits. The collectors ask for the skipped hits, and one
+     * more hit than the page size to find out if there is a next page, and count all hits in the same pass.
+     * They never ask for more hits than there are documents, since their hit queues are allocated up front.
+     * Using collector managers lets the searcher collect the slices of a large index in parallel.
+     * <p>
+     * If a sort order is given, the hits are sorted on doc values while they are collected,
+     * so only the documents on the page are loaded. Sorted hits are not scored during collection,
+     * but the scores of the hits on the page are filled in afterwards.
+     * <p>
+     * The cancellation signal is checked while collecting hits, and before loading each document.
+     */
+    private ReferencePage searchReferencePage(final IndexSearcher searcher,
+                                              final Query originalQuery,
+                                              final PageRequest page,
+                                              final Sort sort,
+                                              final ScoreDoc after,
+                                              final Cancellation cancellation,
+                                              final QueryTrace trace) throws IOException {
+        final IndexSearcher traceSearcher = trace.searcher(searcher);
+        final Query query = rewrite(traceSearcher, originalQuery, trace);
+        final long searchStart = System.nanoTime();
+        final long wantedHits = (long) page.offset() + page.size() + 1;
+        final int numHits = (int) Math.min(wantedHits, Math.max(1, searcher.getIndexReader().maxDoc()));
+        final CollectorManager<?, ? extends TopDocs> hitsManager;
+        if (sort != null) {
+            hitsManager = TopFieldCollector.createSharedManager(sort, numHits, (FieldDoc) after, Integer.MAX_VALUE);
+        } else {
+            hitsManager = TopScoreDocCollector.createSharedManager(numHits, after, Integer.MAX_VALUE);
+        }
+        final MultiCollectorManager hitsAndFacetsManager = page.facets()
+                ? new MultiCollectorManager(hitsManager, new FacetsCollectorManager())
+                : new MultiCollectorManager(hitsManager);
+        final Object[] results =
+                search(traceSearcher, query, new CancellableCollectorManager<>(hitsAndFacetsManager, cancellation));
+        final TopDocs topDocs = (TopDocs) results[0];
+        final FacetsCollector facetsCollector = page.facets() ? (FacetsCollector) results[1] : null;
+        final ScoreDoc[] allHits = topDocs.scoreDocs;
+        final int from = Math.min(page.offset(), allHits.length);
+        final ScoreDoc[] hits = Arrays.copyOfRange(allHits, from, Math.min(from + page.size(), allHits.length));
+        if (sort != null && hits.length > 0) {
+            TopFieldCollector.populateScores(hits, searcher, query);
+        }
+        trace.addSince(QueryPhase.SEARCH, searchStart);
+
+        final List<BookReference> references = new ArrayList<>(hits.length);
+        for (final ScoreDoc hit : hits) {
+            cancellation.throwIfCancelled();
+            references.add(createReference(searcher, hit, trace));
+        }
+        final boolean hasNext = allHits.length > from + page.size();
+        final String nextCursor = hasNext ? Cursors.encode(hits[hits.length - 1]) : null;
+        final long facetsStart = System.nanoTime();
+        final var facets = facetsCollector != null ? countFacets(searcher, facetsCollector) : BookFacets.EMPTY;
+        trace.addSince(QueryPhase.FACETS, facetsStart);
+        metrics.hits.add(topDocs.totalHits.value);
+        trace.addHits(topDocs.totalHits.value);
+        return new ReferencePage(references, topDocs.totalHits.value, nextCursor, facets);
+    }
+
+    /**
+     * Searches with a cancellable collector manager. A searcher that collects the slices of the index
+     * in parallel wraps the exceptions thrown by the collectors, so the {@link CancellationException}
+     * of a cancelled search is unwrapped, to keep the cancellation contract of the query service.
+     */
+    private static <T> T search(final IndexSearcher searcher,
+                                final Query query,
+                                final CancellableCollectorManager<?, T> manager) throws IOException {
+        try {
+            return searcher.search(query, manager);
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof CancellationException cancellation) {
+                    throw cancellation;
                 }
-                hits = searcher.searchAfter(hits[hits.length - 1], query, PAGE_SIZE).scoreDocs;
             }
+            throw e;
+        }
+    }
 
-            return references;
+    /**
+     * Returns the Lucene sort order for the given sort specification,
+     * or {@code null} if the hits should be ordered by descending score.
+     */
+    private static Sort createSort(final BookSort bookSort) {
+        final SortField sortField = switch (bookSort.key()) {
+            case RELEVANCE -> new SortField(null, SortField.Type.SCORE, bookSort.descending());
+            case AUTHOR -> new SortField(FieldName.AUTHOR.value(), SortField.Type.STRING, bookSort.descending());
+            case TITLE -> new SortField(FieldName.TITLE.value(), SortField.Type.STRING, bookSort.descending());
+            case PAGES -> new SortField(FieldName.PAGES.value(), SortField.Type.INT, bookSort.descending());
+        };
+        return sortField.getType() == SortField.Type.SCORE && !sortField.getReverse() ? null : new Sort(sortField);
+    }
+
+    /**
+     * Returns all hits for the query, ordered by score. Counting the hits first lets us size
+     * the hit queue exactly, instead of running the search again for every batch of hits.
+     */
+    private ScoreDoc[] searchAll(final IndexSearcher searcher, final Query originalQuery, final QueryTrace trace)
+            throws IOException {
+        final IndexSearcher traceSearcher = trace.searcher(searcher);
+        final Query query = rewrite(traceSearcher, originalQuery, trace);
+        final long start = System.nanoTime();
+        try {
+            final int count = traceSearcher.count(query);
+            metrics.hits.add(count);
+            trace.addHits(count);
+            if (count == 0) {
+                return new ScoreDoc[0];
+            }
+            return traceSearcher.search(query, count).scoreDocs;
+        } finally {
+            trace.addSince(QueryPhase.SEARCH, start);
         }
     }
+
+    /**
+     * Creates a book from the stored fields of the document if the index stores complete books,
+     * and reads the book file otherwise.
+     */
+    private Book createBook(final Document document, final QueryTrace trace) throws IOException {
+        final IndexableField pages = document.getField(FieldName.PAGES.value());
+        if (pages != null) {
+            return new Book(
+                    document.get(FieldName.ISBN.value()),
+                    document.get(FieldName.TITLE.value()),
+                    document.get(FieldName.AUTHOR.value()),
+                    pages.numericValue().intValue(),
+                    document.get(FieldName.DESCRIPTION.value())
+            );
+        } else {
+            final long start = System.nanoTime();
+            try {
+                return fileService.readBook(Path.of(document.get(FieldName.PATH.value())));
+            } finally {
+                final long elapsed = System.nanoTime() - start;
+                metrics.readBook.record(elapsed);
+                trace.add(QueryPhase.READ_BOOK, elapsed);
+            }
+        }
+    }
+
+    private Document loadDocument(final IndexSearcher searcher, final ScoreDoc hit, final QueryTrace trace)
+            throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return searcher.doc(hit.doc);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            metrics.storedFields.record(elapsed);
+            trace.add(QueryPhase.STORED_FIELDS, elapsed);
+        }
+    }
+
+    private BookReference loadReference(final IndexSearcher searcher, final ScoreDoc hit) {
+        try {
+            return createReference(searcher, hit, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void release(final SearcherSource.Lease lease) {
+        try {
+            lease.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a reference from the stored fields of the hit. Only the fields of the reference are loaded,
+     * and not for example the description, that may be much larger. The trace is {@code null}
+     * if the reference is loaded after the trace has finished.
+     */
+    private BookReference createReference(final IndexSearcher searcher, final ScoreDoc hit, final QueryTrace trace)
+            throws IOException {
+        final long start = System.nanoTime();
+        final var document = searcher.doc(hit.doc, REFERENCE_FIELDS);
+        final long elapsed = System.nanoTime() - start;
+        metrics.storedFields.record(elapsed);
+        if (trace != null) {
+            trace.add(QueryPhase.STORED_FIELDS, elapsed);
+        }
+        final var isbn = document.get(FieldName.ISBN.value());
+        final var author = document.get(FieldName.AUTHOR.value());
+        final var title = document.get(FieldName.TITLE.value());
+        final var pathName = document.get(FieldName.PATH.value());
+        final var path = pathName != null ? Path.of(pathName) : null;
+        return new BookReference(isbn, author, title, path, hit.score);
+    }
+
+    private static LongRange createPageRange(final int min, final int max) {
+        return new LongRange(min + "-" + max, min, true, max, true);
+    }
+
+    /**
+     * The key of a cached result. The finder name keeps results of different types apart.
+     */
+    private record CacheKey(String finder, Query query, PageRequest page) { }
+
 }
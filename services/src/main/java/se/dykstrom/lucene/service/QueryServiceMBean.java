@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * The metrics of a {@link QueryServiceImpl}, published as an MBean. The latencies of the query methods
+ * are published as separate {@link LatencyMBean}s.
+ */
+public interface QueryServiceMBean {
+
+    /**
+     * Returns the total number of hits found by searches that were not answered from the result cache.
+     */
+    long getHits();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    int getCacheSize();
+
+    /**
+     * Returns the number of segments in the index that the current searcher searches.
+     */
+    int getSegmentCount();
+
+    /**
+     * Returns the size on disk of the index that the current searcher searches.
+     */
+    long getIndexSizeBytes();
+}
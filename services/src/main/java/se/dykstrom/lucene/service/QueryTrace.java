@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.sandbox.search.QueryProfilerIndexSearcher;
+import org.apache.lucene.sandbox.search.QueryProfilerResult;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects the timings of one call to a query service method. The time from the start of the trace until
+ * the query has been created is counted as the parse phase. A trace is used by one thread at a time.
+ */
+final class QueryTrace {
+
+    private static final QueryPhase[] PHASES = QueryPhase.values();
+
+    private final String method;
+    private final boolean profiled;
+    private final long start = System.nanoTime();
+    private final long[] phaseNanos = new long[PHASES.length];
+
+    private Query query;
+    private Query rewrittenQuery;
+    private long hits;
+    private boolean cached;
+    private QueryProfilerIndexSearcher profiler;
+
+    /**
+     * Creates a new trace.
+     *
+     * @param method The name of the query service method.
+     * @param profiled True if the query should be profiled in detail.
+     */
+    QueryTrace(final String method, final boolean profiled) {
+        this.method = requireNonNull(method);
+        this.profiled = profiled;
+    }
+
+    boolean profiled() {
+        return profiled;
+    }
+
+    /**
+     * Records the created query, and ends the parse phase.
+     */
+    Query parsed(final Query query) {
+        this.query = query;
+        phaseNanos[QueryPhase.PARSE.ordinal()] = System.nanoTime() - start;
+        return query;
+    }
+
+    /**
+     * Records the rewritten query, and the time it took to rewrite it.
+     */
+    void rewritten(final Query rewrittenQuery, final long rewriteStart) {
+        this.rewrittenQuery = rewrittenQuery;
+        addSince(QueryPhase.REWRITE, rewriteStart);
+    }
+
+    void addHits(final long hits) {
+        this.hits += hits;
+    }
+
+    void cached() {
+        this.cached = true;
+    }
+
+    void add(final QueryPhase phase, final long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    void addSince(final QueryPhase phase, final long phaseStart) {
+        add(phase, System.nanoTime() - phaseStart);
+    }
+
+    /**
+     * Returns a searcher that profiles the queries it runs if this trace is profiled,
+     * and the given searcher otherwise.
+     */
+    IndexSearcher searcher(final IndexSearcher searcher) {
+        if (!profiled) {
+            return searcher;
+        }
+        if (profiler == null || profiler.getIndexReader() != searcher.getIndexReader()) {
+            profiler = new QueryProfilerIndexSearcher(searcher.getIndexReader());
+            profiler.setSimilarity(searcher.getSimilarity());
+        }
+        return profiler;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    SlowQuery toSlowQuery(final long elapsedNanos) {
+        final Map<QueryPhase, Duration> phases = new EnumMap<>(QueryPhase.class);
+        for (final QueryPhase phase : PHASES) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                phases.put(phase, Duration.ofNanos(phaseNanos[phase.ordinal()]));
+            }
+        }
+        final List<QueryProfile> profile = profiler != null ? toProfiles(profiler.getProfileResult()) : List.of();
+        return new SlowQuery(
+                method,
+                query != null ? query.toString() : "",
+                rewrittenQuery != null ? rewrittenQuery.toString() : "",
+                hits,
+                cached,
+                Duration.ofNanos(elapsedNanos),
+                phases,
+                profile
+        );
+    }
+
+    private static List<QueryProfile> toProfiles(final List<QueryProfilerResult> results) {
+        final List<QueryProfile> profiles = new ArrayList<>(results.size());
+        for (final QueryProfilerResult result : results) {
+            profiles.add(new QueryProfile(
+                    result.getQueryName(),
+                    result.getDescription(),
+                    Duration.ofNanos(result.getTotalTime()),
+                    result.getTimeBreakdown(),
+                    toProfiles(result.getProfiledChildren())
+            ));
+        }
+        return profiles;
+    }
+}
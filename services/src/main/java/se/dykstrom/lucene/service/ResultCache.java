@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A size-bounded cache of query results that evicts the least recently used results when it is full.
+ * The size of the cache is the sum of the weights of the cached results, as given by a weigher,
+ * so that a few large results cannot fill the heap. Results that weigh more than the whole cache
+ * are not cached at all.
+ * <p>
+ * Each result is tied to the version of the index reader it was computed from. When a lookup or
+ * an insertion is made with a newer version, all cached results are dropped, since they may no
+ * longer be correct. Results computed from an older reader than the current one are never cached.
+ */
+final class ResultCache<K, V> {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final long maxSize;
+    private final ToIntFunction<V> weigher;
+
+    // Guarded by this
+    private final Map<K, Entry<V>> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private IndexVersion version;
+
+    /**
+     * Creates a new result cache.
+     *
+     * @param maxSize The maximum sum of the weights of the cached results.
+     * @param weigher Returns the weight of a result, which must not be negative.
+     */
+    ResultCache(final long maxSize, final ToIntFunction<V> weigher) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.weigher = requireNonNull(weigher);
+    }
+
+    /**
+     * Returns the result cached for the given key and index version, or {@code null} if there is none.
+     */
+    V get(final IndexVersion version, final K key) {
+        final V result;
+        synchronized (this) {
+            final Entry<V> entry = updateVersion(version) ? results.get(key) : null;
+            result = entry != null ? entry.result() : null;
+        }
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Caches the result for the given key and index version.
+     */
+    void put(final IndexVersion version, final K key, final V result) {
+        final int weight = weigher.applyAsInt(result);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative: " + weight);
+        }
+        synchronized (this) {
+            if (weight > maxSize || !updateVersion(version)) {
+                return;
+            }
+            final Entry<V> previous = results.put(key, new Entry<>(result, weight));
+            size += weight - (previous != null ? previous.weight() : 0);
+            // Evict the least recently used results until the new one fits
+            final Iterator<Entry<V>> iterator = results.values().iterator();
+            while (size > maxSize) {
+                size -= iterator.next().weight();
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        results.clear();
+        size = 0;
+    }
+
+    CacheStats stats() {
+        final int size;
+        synchronized (this) {
+            size = results.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), size);
+    }
+
+    /**
+     * Moves the cache to the given index version, if it is newer than the current one.
+     * Returns {@code true} if the cache is now at the given version.
+     */
+    private boolean updateVersion(final IndexVersion version) {
+        if (this.version == null || version.compareTo(this.version) > 0) {
+            clear();
+            this.version = version;
+        }
+        return version.equals(this.version);
+    }
+
+    private record Entry<V>(V result, int weight) { }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one long-lived searcher for an index. The searcher is opened on first use, and refreshed
+ * in the background when the index changes. Users acquire the current searcher, and release it
+ * when done, so that a refresh never closes a searcher that is still in use.
+ * <p>
+ * If more than one search thread is given, the searchers are created with an executor,
+ * so that searches that use a collector manager search the slices of a large index in parallel.
+ * <p>
+ * The searchers are {@link ShardedIndexSearcher}s over all shards of the current {@link IndexGeneration}.
+ * When a refresh finds that a rebuilt index has been published, new searchers are opened on the new
+ * generation. The old generation is deleted when the last searcher acquired from it has been released,
+ * unless another searcher source, in this or another process, still uses it.
+ */
+final class SearcherSource implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(SearcherSource.class.getName());
+
+    private final Path indexPath;
+    private final int shards;
+    private final DirectoryType directoryType;
+    private final Duration refreshInterval;
+    private final String owner;
+    private final ExecutorService searchExecutor;
+    private final List<ReferenceManager.RefreshListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Serializes refreshes, so that a refresh never uses a searcher manager that another refresh has closed. */
+    private final Object refreshLock = new Object();
+
+    // Guarded by this
+    private Generation current;
+    private ScheduledExecutorService refresher;
+    private boolean closed;
+
+    /**
+     * Creates a new searcher source.
+     *
+     * @param indexPath The path to the index directory.
+     * @param shards The number of shards that the index is divided into.
+     * @param directoryType How the index files are accessed.
+     * @param refreshInterval The interval between background checks for index changes.
+     * @param searchThreads The number of threads that search index slices in parallel.
+     * @param owner The name of the service that owns this source, used in error messages.
+     */
+    SearcherSource(final Path indexPath,
+                   final int shards,
+                   final DirectoryType directoryType,
+                   final Duration refreshInterval,
+                   final int searchThreads,
+                   final String owner) {
+        this.indexPath = requireNonNull(indexPath);
+        this.shards = shards;
+        this.directoryType = requireNonNull(directoryType);
+        this.refreshInterval = requireNonNull(refreshInterval);
+        this.owner = requireNonNull(owner);
+        this.searchExecutor = searchThreads > 1
+                ? Executors.newFixedThreadPool(searchThreads, new DaemonThreadFactory("searcher"))
+                : null;
+    }
+
+    /**
+     * Adds a listener that is notified each time the searcher has been refreshed,
+     * including when it has moved to a new index generation.
+     */
+    synchronized void addListener(final ReferenceManager.RefreshListener listener) {
+        listeners.add(listener);
+        if (current != null) {
+            current.manager.addListener(listener);
+        }
+    }
+
+    /**
+     * Acquires the current searcher, applies the given function to it, and releases it again.
+     */
+    <T> T withSearcher(final SearcherFunction<T> function) throws IOException {
+        try (Lease lease = acquire()) {
+            return function.apply(lease.searcher());
+        }
+    }
+
+    /**
+     * Acquires the current searcher, and keeps it until the returned lease is closed. This is for results
+     * that are read after the method that searched has returned. Until the lease is closed, the searcher
+     * and its reader stay open, even if the index is refreshed or rebuilt, or this source is closed.
+     */
+    synchronized Lease acquire() throws IOException {
+        final Generation generation = currentGeneration();
+        final IndexSearcher searcher = generation.manager.acquire();
+        generation.leases++;
+        return new Lease(this, generation, searcher);
+    }
+
+    /**
+     * Makes sure that subsequent searches see all changes committed to the index before this call,
+     * and the latest published index generation.
+     */
+    void refresh() throws IOException {
+        synchronized (refreshLock) {
+            currentGeneration();
+            switchGenerationIfPublished();
+            manager().maybeRefreshBlocking();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+            if (searchExecutor != null) {
+                searchExecutor.shutdown();
+            }
+            if (current != null) {
+                retire(current, false);
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the index that the given searcher searches.
+     */
+    static IndexVersion version(final IndexSearcher searcher) {
+        return ((ShardedIndexSearcher) searcher).version();
+    }
+
+    /**
+     * Returns the directory readers of all shards that the given searcher searches.
+     */
+    static List<DirectoryReader> shardReaders(final IndexSearcher searcher) {
+        return ((ShardedIndexSearcher) searcher).shardReaders();
+    }
+
+    /**
+     * Returns the current generation, opening it on first use. The index must exist when this method is called.
+     */
+    private synchronized Generation currentGeneration() throws IOException {
+        if (closed) {
+            throw new IllegalStateException(owner + " is closed");
+        }
+        if (current == null) {
+            current = open(IndexGeneration.current(indexPath));
+            refresher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("searcher-refresher"));
+            final long interval = refreshInterval.toMillis();
+            refresher.scheduleWithFixedDelay(this::maybeRefresh, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return current;
+    }
+
+    private synchronized ReferenceManager<IndexSearcher> manager() {
+        if (closed) {
+            throw new IllegalStateException(owner + " is closed");
+        }
+        return current.manager;
+    }
+
+    private void maybeRefresh() {
+        try {
+            synchronized (refreshLock) {
+                switchGenerationIfPublished();
+                manager().maybeRefresh();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to refresh searcher for index " + indexPath, e);
+        }
+    }
+
+    /**
+     * Opens searchers on the latest published index generation, if it is not the current generation,
+     * and retires the current generation. Must be called with the refresh lock held.
+     */
+    private void switchGenerationIfPublished() throws IOException {
+        final IndexGeneration published = IndexGeneration.current(indexPath);
+        synchronized (this) {
+            if (closed || current.generation.equals(published)) {
+                return;
+            }
+        }
+        // Opening the readers may take a while, so do it without blocking searches
+        final Generation next = open(published);
+        synchronized (this) {
+            if (closed) {
+                next.dispose();
+                return;
+            }
+            final Generation previous = current;
+            current = next;
+            retire(previous, true);
+        }
+        LOGGER.log(Level.INFO, () -> "Switched " + owner + " to index " + published.path());
+        for (final ReferenceManager.RefreshListener listener : listeners) {
+            listener.beforeRefresh();
+            listener.afterRefresh(true);
+        }
+    }
+
+    private Generation open(final IndexGeneration generation) throws IOException {
+        final Closeable inUse = generation.markInUse(indexPath);
+        final List<Directory> directories = new ArrayList<>(shards);
+        try {
+            for (final Path shardPath : Shards.paths(generation.path(), shards)) {
+                directories.add(directoryType.open(shardPath));
+            }
+            final var manager = new ShardedSearcherManager(directories, generation.number(), searchExecutor);
+            listeners.forEach(manager::addListener);
+            return new Generation(indexPath, generation, inUse, directories, manager);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(directories);
+            IOUtils.closeWhileHandlingException(inUse);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops handing out searchers from the given generation. Its directories are closed, and optionally
+     * its files deleted if no one else uses them, when the last searcher acquired from it has been released.
+     */
+    private synchronized void retire(final Generation generation, final boolean delete) throws IOException {
+        generation.retired = true;
+        generation.delete = delete;
+        generation.manager.close();
+        if (generation.leases == 0) {
+            generation.dispose();
+        }
+    }
+
+    private void release(final Generation generation) throws IOException {
+        synchronized (this) {
+            generation.leases--;
+            if (generation.leases > 0 || !generation.retired) {
+                return;
+            }
+        }
+        generation.dispose();
+    }
+
+    /**
+     * The searchers of one index generation, and the number of searchers acquired from it
+     * that have not yet been released.
+     */
+    private static final class Generation {
+
+        private final Path indexPath;
+        private final IndexGeneration generation;
+        private final Closeable inUse;
+        private final List<Directory> directories;
+        private final ReferenceManager<IndexSearcher> manager;
+
+        // Guarded by the searcher source
+        private int leases;
+        private boolean retired;
+        private boolean delete;
+
+        private Generation(final Path indexPath,
+                           final IndexGeneration generation,
+                           final Closeable inUse,
+                           final List<Directory> directories,
+                           final ReferenceManager<IndexSearcher> manager) {
+            this.indexPath = indexPath;
+            this.generation = generation;
+            this.inUse = inUse;
+            this.directories = directories;
+            this.manager = manager;
+        }
+
+        private void dispose() throws IOException {
+            if (!retired) {
+                manager.close();
+            }
+            try {
+                IOUtils.close(directories);
+            } finally {
+                inUse.close();
+            }
+            if (delete) {
+                try {
+                    if (generation.deleteIfUnused(indexPath)) {
+                        LOGGER.log(Level.INFO, () -> "Deleted replaced index " + generation.path());
+                    } else {
+                        // Its last user, or the next rebuild, deletes it instead
+                        LOGGER.log(Level.INFO, () -> "Kept replaced index " + generation.path() + ", still in use");
+                    }
+                } catch (IOException e) {
+                    // The next rebuild deletes it instead
+                    LOGGER.log(Level.WARNING, "Failed to delete replaced index " + generation.path(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A searcher acquired from this source. Closing the lease releases the searcher.
+     * Closing it more than once has no effect.
+     */
+    static final class Lease implements Closeable {
+
+        private final SearcherSource source;
+        private final Generation generation;
+        private final IndexSearcher searcher;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(final SearcherSource source, final Generation generation, final IndexSearcher searcher) {
+            this.source = source;
+            this.generation = generation;
+            this.searcher = searcher;
+        }
+
+        IndexSearcher searcher() {
+            return searcher;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    generation.manager.release(searcher);
+                } finally {
+                    source.release(generation);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface SearcherFunction<T> {
+        T apply(final IndexSearcher searcher) throws IOException;
+    }
+}
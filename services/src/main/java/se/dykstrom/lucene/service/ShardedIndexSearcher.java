@@ -0,0 +1,109 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * A searcher for an index that is divided into shards. It searches a reader over all shards, so the hits
+ * from all shards are ranked together, using term statistics from the whole index. Each slice of the index
+ * holds segments from one shard only, so if the searcher has an executor, the shards are searched
+ * concurrently, and the top hits of each shard are merged into one list.
+ * <p>
+ * An index that is not sharded is searched as an index with one shard.
+ * <p>
+ * Searches that only concern one shard, like lookups by ISBN, can use the searcher of that shard.
+ * The doc ids of hits from a shard searcher are only valid in that shard searcher.
+ */
+final class ShardedIndexSearcher extends IndexSearcher {
+
+    // The same limits as in the default slices of an index searcher
+    private static final int MAX_DOCS_PER_SLICE = 250_000;
+    private static final int MAX_SEGMENTS_PER_SLICE = 5;
+
+    private final long generation;
+    private final List<DirectoryReader> shardReaders;
+    private final List<IndexSearcher> shardSearchers;
+
+    /**
+     * Creates a searcher for a reader whose sub readers are the directory readers of the shards, in order.
+     * The shards belong to the given {@link IndexGeneration}.
+     */
+    ShardedIndexSearcher(final MultiReader reader, final long generation, final Executor executor) {
+        super(reader, executor);
+        this.generation = generation;
+        final List<DirectoryReader> readers = new ArrayList<>();
+        final List<IndexSearcher> searchers = new ArrayList<>();
+        for (final IndexReaderContext shard : reader.getContext().children()) {
+            final var shardReader = (DirectoryReader) shard.reader();
+            readers.add(shardReader);
+            searchers.add(new IndexSearcher(shardReader));
+        }
+        this.shardReaders = List.copyOf(readers);
+        this.shardSearchers = List.copyOf(searchers);
+    }
+
+    int shardCount() {
+        return shardSearchers.size();
+    }
+
+    /**
+     * Returns a searcher that only searches the given shard.
+     */
+    IndexSearcher shard(final int shard) {
+        return shardSearchers.get(shard);
+    }
+
+    List<DirectoryReader> shardReaders() {
+        return shardReaders;
+    }
+
+    /**
+     * Returns the version of the index that this searcher searches.
+     */
+    IndexVersion version() {
+        return new IndexVersion(generation, shardReaders.stream().mapToLong(DirectoryReader::getVersion).sum());
+    }
+
+    /**
+     * Slices the segments of each shard separately. This is called from the constructor of the superclass,
+     * so it cannot use the fields of this class.
+     */
+    @Override
+    protected LeafSlice[] slices(final List<LeafReaderContext> leaves) {
+        final Map<IndexReaderContext, List<LeafReaderContext>> leavesByShard = new LinkedHashMap<>();
+        for (final LeafReaderContext leaf : leaves) {
+            leavesByShard.computeIfAbsent(leaf.parent, parent -> new ArrayList<>()).add(leaf);
+        }
+        final List<LeafSlice> slices = new ArrayList<>();
+        for (final List<LeafReaderContext> shardLeaves : leavesByShard.values()) {
+            slices.addAll(Arrays.asList(slices(shardLeaves, MAX_DOCS_PER_SLICE, MAX_SEGMENTS_PER_SLICE)));
+        }
+        return slices.toArray(new LeafSlice[0]);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Manages the searchers of an index that is divided into shards, like a
+ * {@link org.apache.lucene.search.SearcherManager} does for an index with one directory.
+ * Each searcher is a {@link ShardedIndexSearcher} over one directory reader per shard, also if there is
+ * only one shard.
+ * A refresh only reopens the shards that have changed, and shares the readers of the other
+ * shards with the previous searcher.
+ */
+final class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+    private final long generation;
+    private final Executor executor;
+
+    /**
+     * Opens a searcher over the given shard directories. All shards must contain an index.
+     *
+     * @param directories The directories of the shards, in shard order.
+     * @param generation The number of the {@link IndexGeneration} that the shards belong to.
+     * @param executor The executor that searches the shards concurrently, or {@code null} to search them
+     *                 in the calling thread.
+     */
+    ShardedSearcherManager(final List<Directory> directories, final long generation, final Executor executor)
+            throws IOException {
+        this.generation = generation;
+        this.executor = executor;
+        final List<DirectoryReader> readers = new ArrayList<>(directories.size());
+        try {
+            for (final Directory directory : directories) {
+                readers.add(DirectoryReader.open(directory));
+            }
+            current = newSearcher(readers);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(readers);
+            throw e;
+        }
+    }
+
+    @Override
+    protected IndexSearcher refreshIfNeeded(final IndexSearcher reference) throws IOException {
+        final List<DirectoryReader> readers = new ArrayList<>();
+        boolean changed = false;
+        try {
+            for (final DirectoryReader reader : ((ShardedIndexSearcher) reference).shardReaders()) {
+                final DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+                if (newReader != null) {
+                    readers.add(newReader);
+                    changed = true;
+                } else {
+                    // The new searcher shares the reader with the current searcher
+                    reader.incRef();
+                    readers.add(reader);
+                }
+            }
+            if (!changed) {
+                IOUtils.applyToAll(readers, IndexReader::decRef);
+                return null;
+            }
+            return newSearcher(readers);
+        } catch (IOException | RuntimeException e) {
+            for (final DirectoryReader reader : readers) {
+                try {
+                    reader.decRef();
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected void decRef(final IndexSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected boolean tryIncRef(final IndexSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(final IndexSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+
+    /**
+     * Creates a searcher that takes over one reference to each of the given readers.
+     * <p>
+     * The multi reader must not close its sub readers, since closing a reader only releases one reference
+     * to it, however many searchers have shared it. Instead, the multi reader holds its own reference
+     * to each sub reader, and releases it when the multi reader is closed. The references that were passed
+     * to this method are released when the multi reader has taken over.
+     */
+    private IndexSearcher newSearcher(final List<DirectoryReader> readers) throws IOException {
+        final var reader = new MultiReader(readers.toArray(new IndexReader[0]), false);
+        IOUtils.applyToAll(readers, IndexReader::decRef);
+        return new ShardedIndexSearcher(reader, generation, executor);
+    }
+}
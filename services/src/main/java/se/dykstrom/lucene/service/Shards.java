@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * The layout of a sharded index. Books are routed to shards by a hash of their ISBN, so all versions
+ * of a book end up in the same shard, and a lookup by ISBN only needs to search one shard.
+ */
+final class Shards {
+
+    private static final String SHARD_PREFIX = "shard-";
+
+    // Fixed, so that books are routed to the same shards whatever JVM built the index
+    private static final int HASH_SEED = 0;
+
+    private Shards() { }
+
+    /**
+     * Returns the index directories of the shards. A single shard is stored in the index directory itself.
+     */
+    static List<Path> paths(final Path indexPath, final int shards) {
+        if (shards == 1) {
+            return List.of(indexPath);
+        }
+        final List<Path> paths = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            paths.add(indexPath.resolve(SHARD_PREFIX + i));
+        }
+        return List.copyOf(paths);
+    }
+
+    /**
+     * Returns the number of the shard that owns the book with the given ISBN.
+     */
+    static int shardOf(final String isbn, final int shards) {
+        if (shards == 1) {
+            return 0;
+        }
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(isbn), HASH_SEED), shards);
+    }
+
+    /**
+     * Returns {@code true} if the given path is the index directory of a shard.
+     */
+    static boolean isShard(final Path path) {
+        return path.getFileName().toString().startsWith(SHARD_PREFIX) && Files.isDirectory(path);
+    }
+
+    /**
+     * Verifies that an existing index in the given directory has the given number of shards.
+     * Routing books to a different number of shards would put them in the wrong shards.
+     *
+     * @throws IllegalStateException If the index has a different number of shards.
+     */
+    static void checkLayout(final Path indexPath, final int shards) throws IOException {
+        if (!Files.isDirectory(indexPath)) {
+            return;
+        }
+        int existingShards = 0;
+        boolean unsharded = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath)) {
+            for (final Path path : stream) {
+                if (isShard(path)) {
+                    existingShards++;
+                } else if (path.getFileName().toString().startsWith(IndexFileNames.SEGMENTS)) {
+                    unsharded = true;
+                }
+            }
+        }
+        if (unsharded) {
+            existingShards = 1;
+        }
+        if (existingShards > 0 && existingShards != shards) {
+            throw new IllegalStateException("index " + indexPath + " has " + existingShards + " shards, not " + shards);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query that took at least the slow query threshold, or that was sampled for profiling.
+ *
+ * @param method The name of the query service method that ran the query.
+ * @param query The query, or an empty string if it could not be created.
+ * @param rewrittenQuery The query after rewriting, or an empty string if the query was not rewritten,
+ *                       for example because the result was found in the cache.
+ * @param hits The total number of hits.
+ * @param cached True if the result was found in the cache.
+ * @param elapsed The total time of the query.
+ * @param phases The time spent in each phase of the query. Phases that did not run are left out.
+ * @param profile The profiles of the top-level queries, if the query was sampled for profiling,
+ *                and otherwise an empty list.
+ */
+public record SlowQuery(String method,
+                        String query,
+                        String rewrittenQuery,
+                        long hits,
+                        boolean cached,
+                        Duration elapsed,
+                        Map<QueryPhase, Duration> phases,
+                        List<QueryProfile> profile) {
+
+    public SlowQuery {
+        requireNonNull(method);
+        requireNonNull(query);
+        requireNonNull(rewrittenQuery);
+        requireNonNull(elapsed);
+        phases = Map.copyOf(phases);
+        profile = List.copyOf(profile);
+    }
+}
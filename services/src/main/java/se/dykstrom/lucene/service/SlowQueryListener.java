@@ -0,0 +1,27 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+/**
+ * Receives the slow queries of a {@link QueryServiceImpl}. Listeners are called on the thread that ran
+ * the query, after it has finished, so they should return quickly.
+ */
+@FunctionalInterface
+public interface SlowQueryListener {
+
+    void onSlowQuery(SlowQuery query);
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes slow queries to the logger {@value #LOGGER_NAME}, one JSON object per line, so that the log
+ * can be filtered and aggregated with standard tools. Times are in milliseconds. This is the default
+ * slow query listener of a {@link QueryServiceImpl}.
+ */
+public class SlowQueryLog implements SlowQueryListener {
+
+    public static final String LOGGER_NAME = "se.dykstrom.lucene.slowquery";
+
+    private static final System.Logger LOGGER = System.getLogger(LOGGER_NAME);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    @Override
+    public void onSlowQuery(final SlowQuery query) {
+        if (LOGGER.isLoggable(Level.WARNING)) {
+            LOGGER.log(Level.WARNING, toJson(query));
+        }
+    }
+
+    /**
+     * Returns the slow query as a single line of JSON.
+     */
+    public static String toJson(final SlowQuery query) {
+        final Map<String, Object> phases = new LinkedHashMap<>();
+        for (final QueryPhase phase : QueryPhase.values()) {
+            final Duration time = query.phases().get(phase);
+            if (time != null) {
+                phases.put(phase.name().toLowerCase(Locale.ROOT), toMillis(time));
+            }
+        }
+
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("method", query.method());
+        json.put("query", query.query());
+        json.put("rewrittenQuery", query.rewrittenQuery());
+        json.put("hits", query.hits());
+        json.put("cached", query.cached());
+        json.put("elapsed", toMillis(query.elapsed()));
+        json.put("phases", phases);
+        if (!query.profile().isEmpty()) {
+            json.put("profile", toJson(query.profile()));
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("failed to write slow query as JSON", e);
+        }
+    }
+
+    private static List<Object> toJson(final List<QueryProfile> profiles) {
+        final List<Object> json = new ArrayList<>(profiles.size());
+        for (final QueryProfile profile : profiles) {
+            final Map<String, Object> node = new LinkedHashMap<>();
+            node.put("type", profile.type());
+            node.put("description", profile.description());
+            node.put("time", toMillis(profile.time()));
+            node.put("breakdown", new TreeMap<>(profile.breakdown()));
+            if (!profile.children().isEmpty()) {
+                node.put("children", toJson(profile.children()));
+            }
+            json.add(node);
+        }
+        return json;
+    }
+
+    private static double toMillis(final Duration duration) {
+        return duration.toNanos() / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Suggests completions for partially typed authors and titles.
+ */
+public interface SuggestService extends Closeable {
+
+    /**
+     * Returns at most {@code count} authors that contain all words in the given text. The last word
+     * may be partially typed, and matches any word that starts with it. Authors with more books come first.
+     */
+    List<String> suggestAuthors(final String text, final int count) throws IOException;
+
+    /**
+     * Returns at most {@code count} titles that contain all words in the given text. The last word
+     * may be partially typed, and matches any word that starts with it. Titles shared by more books come first.
+     */
+    List<String> suggestTitles(final String text, final int count) throws IOException;
+
+    /**
+     * Makes sure that subsequent suggestions include all changes committed to the index before this call.
+     */
+    void refresh() throws IOException;
+}
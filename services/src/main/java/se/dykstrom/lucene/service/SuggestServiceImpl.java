@@ -0,0 +1,463 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import se.dykstrom.lucene.model.FieldName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A suggest service that keeps an in-memory infix suggester for authors and titles, built from the index.
+ * Each suggestion is weighted by the number of books it occurs in.
+ * <p>
+ * The suggesters are updated incrementally when the index changes. Each suggester keeps running weights,
+ * which are adjusted by the documents of new segments, the documents deleted from existing segments,
+ * and the documents of segments that have been merged away. Only the weights that have changed are
+ * updated in the suggester.
+ */
+public class SuggestServiceImpl implements SuggestService {
+
+    private static final System.Logger LOGGER = System.getLogger(SuggestServiceImpl.class.getName());
+
+    private static final Set<String> SUGGEST_FIELDS = Set.of(FieldName.AUTHOR.value(), FieldName.TITLE.value());
+
+    private final SearcherSource searcherSource;
+    private final FieldSuggester authors;
+    private final FieldSuggester titles;
+
+    // Guarded by this
+    private Map<Object, SegmentSuggestions> segments = new HashMap<>();
+    private IndexVersion version;
+    private boolean closed;
+
+    public SuggestServiceImpl(final Path indexPath) {
+        this(indexPath, QueryConfig.DEFAULT);
+    }
+
+    public SuggestServiceImpl(final Path indexPath, final QueryConfig config) {
+        this.searcherSource = new SearcherSource(
+                indexPath,
+                config.shards(),
+                config.directoryType(),
+                config.refreshInterval(),
+                1,
+                "suggest service"
+        );
+        this.authors = new FieldSuggester();
+        this.titles = new FieldSuggester();
+        this.searcherSource.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() { }
+
+            @Override
+            public void afterRefresh(final boolean didRefresh) {
+                if (didRefresh) {
+                    updateSuggesters();
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<String> suggestAuthors(final String text, final int count) throws IOException {
+        return suggest(authors, text, count);
+    }
+
+    @Override
+    public List<String> suggestTitles(final String text, final int count) throws IOException {
+        return suggest(titles, text, count);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        searcherSource.refresh();
+        update();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            final List<Closeable> closeables = new ArrayList<>(segments.values());
+            closeables.addAll(List.of(searcherSource, authors, titles));
+            IOUtils.close(closeables);
+        }
+    }
+
+    private List<String> suggest(final FieldSuggester suggester, final String text, final int count)
+            throws IOException {
+        requireNonNull(text);
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        if (text.isBlank()) {
+            return List.of();
+        }
+        if (!isBuilt()) {
+            update();
+        }
+        return suggester.lookup(text, count);
+    }
+
+    private synchronized boolean isBuilt() {
+        if (closed) {
+            throw new IllegalStateException("suggest service is closed");
+        }
+        return version != null;
+    }
+
+    private void updateSuggesters() {
+        try {
+            update();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to update suggesters", e);
+        }
+    }
+
+    /**
+     * Updates the suggesters from the current searcher, unless they are already up-to-date.
+     * Only segments that are new, have new deletions, or have been dropped since the last update are read.
+     * If the update fails, the suggesters are rebuilt from scratch by the next update.
+     */
+    private synchronized void update() throws IOException {
+        searcherSource.withSearcher(searcher -> {
+            final IndexVersion readerVersion = SearcherSource.version(searcher);
+            if (!readerVersion.equals(version)) {
+                try {
+                    updateSegments(searcher.getIndexReader().leaves());
+                    authors.update();
+                    titles.update();
+                    version = readerVersion;
+                } catch (IOException | RuntimeException e) {
+                    reset();
+                    throw e;
+                }
+            }
+            return null;
+        });
+    }
+
+    private void updateSegments(final List<LeafReaderContext> leaves) throws IOException {
+        final Set<Object> keys = new HashSet<>();
+        for (final LeafReaderContext leaf : leaves) {
+            keys.add(leaf.reader().getCoreCacheHelper().getKey());
+        }
+        if (!segments.isEmpty() && Collections.disjoint(segments.keySet(), keys)) {
+            // A new index generation, so it is cheaper to start over than to subtract all old segments
+            reset();
+        }
+        final Map<Object, SegmentSuggestions> newSegments = new HashMap<>();
+        try {
+            for (final LeafReaderContext leaf : leaves) {
+                final LeafReader leafReader = leaf.reader();
+                final Object key = leafReader.getCoreCacheHelper().getKey();
+                final SegmentSuggestions suggestions = segments.remove(key);
+                if (suggestions == null) {
+                    newSegments.put(key, SegmentSuggestions.add(leafReader, authors, titles));
+                } else {
+                    newSegments.put(key, suggestions);
+                    suggestions.update(leafReader, authors, titles);
+                }
+            }
+            // The segments that remain have been merged away
+            for (final SegmentSuggestions suggestions : segments.values()) {
+                suggestions.remove(authors, titles);
+            }
+            IOUtils.close(segments.values());
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(newSegments.values());
+            throw e;
+        }
+        segments = newSegments;
+    }
+
+    /**
+     * Forgets all segments and weights, so that the next update reads the whole index.
+     */
+    private void reset() {
+        IOUtils.closeWhileHandlingException(segments.values());
+        segments = new HashMap<>();
+        authors.clear();
+        titles.clear();
+        version = null;
+    }
+
+    /**
+     * The suggestions that one segment contributes, which are the authors and titles of its live documents.
+     * The segment reader is kept open, so that the contributions can be subtracted again when documents are
+     * deleted, or when the segment is merged away, without keeping the authors and titles in memory.
+     */
+    private static final class SegmentSuggestions implements Closeable {
+
+        private LeafReader reader;
+
+        private SegmentSuggestions(final LeafReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Adds the suggestions of all live documents in a new segment.
+         */
+        static SegmentSuggestions add(final LeafReader reader,
+                                      final FieldSuggester authors,
+                                      final FieldSuggester titles) throws IOException {
+            reader.incRef();
+            final var suggestions = new SegmentSuggestions(reader);
+            try {
+                final Bits liveDocs = reader.getLiveDocs();
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        adjust(reader, doc, 1, authors, titles);
+                    }
+                }
+                return suggestions;
+            } catch (IOException | RuntimeException e) {
+                suggestions.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Subtracts the suggestions of the documents that have been deleted since the last update.
+         * The given reader reads the same segment as the current one, with the same or more deletions.
+         */
+        void update(final LeafReader newReader,
+                    final FieldSuggester authors,
+                    final FieldSuggester titles) throws IOException {
+            if (newReader.numDeletedDocs() == reader.numDeletedDocs()) {
+                return;
+            }
+            final Bits oldLiveDocs = reader.getLiveDocs();
+            final Bits newLiveDocs = newReader.getLiveDocs();
+            newReader.incRef();
+            reader.decRef();
+            reader = newReader;
+            for (int doc = 0; doc < newReader.maxDoc(); doc++) {
+                if ((oldLiveDocs == null || oldLiveDocs.get(doc)) && !newLiveDocs.get(doc)) {
+                    // The stored fields of deleted documents can still be read
+                    adjust(newReader, doc, -1, authors, titles);
+                }
+            }
+        }
+
+        /**
+         * Subtracts the suggestions of all live documents in a segment that has been merged away.
+         */
+        void remove(final FieldSuggester authors, final FieldSuggester titles) throws IOException {
+            final Bits liveDocs = reader.getLiveDocs();
+            for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    adjust(reader, doc, -1, authors, titles);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.decRef();
+        }
+
+        private static void adjust(final LeafReader reader,
+                                   final int doc,
+                                   final long delta,
+                                   final FieldSuggester authors,
+                                   final FieldSuggester titles) throws IOException {
+            final var visitor = new DocumentStoredFieldVisitor(SUGGEST_FIELDS);
+            reader.document(doc, visitor);
+            final Document document = visitor.getDocument();
+            authors.adjust(document.get(FieldName.AUTHOR.value()), delta);
+            titles.adjust(document.get(FieldName.TITLE.value()), delta);
+        }
+    }
+
+    /**
+     * An infix suggester for one field, together with the running weights of its suggestions.
+     * <p>
+     * The infix suggester cannot remove single suggestions, so a suggestion that has disappeared from
+     * the index is kept with weight 0, and filtered out by lookups. Since suggestions are ranked by weight,
+     * the filtered suggestions never push out live ones. The suggester is rebuilt from scratch when the
+     * stale suggestions outnumber the live ones.
+     */
+    private static class FieldSuggester implements Closeable {
+
+        // Lookups may run concurrently with incremental updates, but not with a rebuild
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // Created by the first update
+        private AnalyzingInfixSuggester suggester;
+
+        // Guarded by the enclosing service: the weights of all suggestions in the suggester, including
+        // stale ones, and the suggestions whose weights have changed since the last update
+        private final Map<String, Long> weights = new HashMap<>();
+        private final Set<String> changed = new HashSet<>();
+        private int staleCount;
+        private boolean rebuild = true;
+
+        List<String> lookup(final String text, final int count) throws IOException {
+            lock.readLock().lock();
+            try {
+                final List<String> result = new ArrayList<>();
+                for (final Lookup.LookupResult lookupResult : suggester.lookup(text, count, true, false)) {
+                    if (lookupResult.value > 0) {
+                        result.add(lookupResult.key.toString());
+                    }
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Adds the given delta to the weight of the given suggestion. The change takes effect in the next update.
+         */
+        void adjust(final String text, final long delta) {
+            if (text != null) {
+                final long oldWeight = weights.getOrDefault(text, 0L);
+                final long newWeight = oldWeight + delta;
+                if (oldWeight > 0 && newWeight == 0) {
+                    staleCount++;
+                } else if (oldWeight == 0 && weights.containsKey(text)) {
+                    staleCount--;
+                }
+                weights.put(text, newWeight);
+                changed.add(text);
+            }
+        }
+
+        /**
+         * Updates the suggester with the weights that have changed since the last update.
+         */
+        void update() throws IOException {
+            if (rebuild || staleCount > weights.size() - staleCount) {
+                weights.values().removeIf(weight -> weight == 0);
+                staleCount = 0;
+                lock.writeLock().lock();
+                try {
+                    if (suggester == null) {
+                        suggester = new AnalyzingInfixSuggester(new ByteBuffersDirectory(), new StandardAnalyzer());
+                    }
+                    suggester.build(new WeightIterator(weights));
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                rebuild = false;
+            } else if (!changed.isEmpty()) {
+                for (final String text : changed) {
+                    suggester.update(new BytesRef(text), null, weights.get(text), null);
+                }
+                suggester.refresh();
+            }
+            changed.clear();
+        }
+
+        /**
+         * Forgets all weights, so that the next update rebuilds the suggester.
+         */
+        void clear() {
+            weights.clear();
+            changed.clear();
+            staleCount = 0;
+            rebuild = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            lock.writeLock().lock();
+            try {
+                IOUtils.close(suggester);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Iterates over suggestions and their weights, when building a suggester.
+     */
+    private static class WeightIterator implements InputIterator {
+
+        private final Iterator<Map.Entry<String, Long>> iterator;
+        private long weight;
+
+        WeightIterator(final Map<String, Long> weights) {
+            this.iterator = weights.entrySet().iterator();
+        }
+
+        @Override
+        public BytesRef next() {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            final var entry = iterator.next();
+            weight = entry.getValue();
+            return new BytesRef(entry.getKey());
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+}
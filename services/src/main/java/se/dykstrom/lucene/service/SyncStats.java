@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+
+/**
+ * Statistics from a directory sync.
+ *
+ * @param added The number of new book files indexed.
+ * @param updated The number of changed book files reindexed.
+ * @param deleted The number of documents deleted because their book files are gone.
+ * @param unchanged The number of book files that were already up to date.
+ * @param elapsed The time it took to sync the directory, including the final commit.
+ */
+public record SyncStats(long added, long updated, long deleted, long unchanged, Duration elapsed) { }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration for an {@link IndexWarmer}.
+ *
+ * @param preloadFiles True if all index files should be read, so that they are in the page cache of the
+ *                     operating system before the first search.
+ * @param queries Representative queries, in query parser syntax, to run after reading the index files.
+ * @param queryLog A file with more queries to run, one per line, or {@code null}. This can be a log of
+ *                 the queries that users ran before a restart. Blank lines, and lines that start with
+ *                 {@code #}, are ignored. The file is read when the warm-up runs.
+ */
+public record WarmUpConfig(boolean preloadFiles, List<String> queries, Path queryLog) {
+
+    /**
+     * Reads all index files, and runs a query that matches all documents in every sort order.
+     */
+    public static final WarmUpConfig DEFAULT = new WarmUpConfig(true, List.of("*:*"), null);
+
+    public WarmUpConfig {
+        queries = List.copyOf(requireNonNull(queries));
+    }
+
+    public WarmUpConfig withPreloadFiles(final boolean preloadFiles) {
+        return new WarmUpConfig(preloadFiles, queries, queryLog);
+    }
+
+    public WarmUpConfig withQueries(final List<String> queries) {
+        return new WarmUpConfig(preloadFiles, queries, queryLog);
+    }
+
+    public WarmUpConfig withQueryLog(final Path queryLog) {
+        return new WarmUpConfig(preloadFiles, queries, queryLog);
+    }
+}
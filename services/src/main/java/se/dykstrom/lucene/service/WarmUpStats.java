@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.time.Duration;
+
+/**
+ * Statistics from warming up an index.
+ *
+ * @param files The number of index files read.
+ * @param bytes The total size of the index files read.
+ * @param queries The number of queries run.
+ * @param failedQueries The number of queries that failed, for example because they could not be parsed.
+ * @param elapsed The time it took to warm up the index.
+ */
+public record WarmUpStats(int files, long bytes, int queries, int failedQueries, Duration elapsed) { }
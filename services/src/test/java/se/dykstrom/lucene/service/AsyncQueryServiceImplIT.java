@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRequest;
+import se.dykstrom.lucene.model.ReferencePage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncQueryServiceImplIT {
+
+    private static final int NUM_BOOKS = 60;
+    private static final int NUM_SEGMENTS = 6;
+    private static final String[] AUTHORS = {"Astrid", "Selma", "Vilhelm"};
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+
+    private static Path bookDir;
+    private static Path indexPath;
+    private static AsyncQueryService asyncQueryService;
+
+    @BeforeAll
+    static void setUpClass() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+
+        // Commit the books in batches to get an index with several segments
+        try (IndexService indexService = new IndexServiceImpl(indexPath, FILE_SERVICE)) {
+            for (int i = 0; i < NUM_BOOKS; i++) {
+                final var book = new Book("978-" + i, "Title " + i, AUTHORS[i % 3], 100 + i, "Description " + i);
+                final var path = bookDir.resolve(book.isbn() + ".json");
+                OBJECT_MAPPER.writeValue(path.toFile(), book);
+                indexService.indexBook(path, Durability.ASYNC);
+                if (i % (NUM_BOOKS / NUM_SEGMENTS) == 0) {
+                    indexService.commit();
+                }
+            }
+        }
+
+        final var config = QueryConfig.DEFAULT.withCacheSize(0).withSearchThreads(4);
+        asyncQueryService = new AsyncQueryServiceImpl(new QueryServiceImpl(indexPath, FILE_SERVICE, config), 4);
+    }
+
+    @AfterAll
+    static void tearDownClass() throws IOException {
+        asyncQueryService.close();
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldFindBookByIsbn() throws Exception {
+        final var book = asyncQueryService.findBookByIsbn("978-42").get();
+        assertEquals("Title 42", book.orElseThrow().title());
+    }
+
+    @Test
+    void shouldRunManySearchesConcurrently() throws Exception {
+        // When
+        final List<CompletableFuture<ReferencePage>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final var request = PageRequest.first(10, BookSort.descending(BookSort.Key.PAGES));
+            futures.add(asyncQueryService.findReferencesByFields(AUTHORS[i % 3], "", "", 0, 0, request));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+
+        // Then
+        for (int i = 0; i < futures.size(); i++) {
+            final var page = futures.get(i).get();
+            assertEquals(NUM_BOOKS / 3, page.totalHits());
+            assertEquals(10, page.references().size());
+            final int lastBook = NUM_BOOKS - 3 + i % 3;
+            assertEquals("978-" + lastBook, page.references().get(0).isbn());
+        }
+    }
+
+    @Test
+    void shouldFindSamePagesWithAndWithoutSearchThreads() throws Exception {
+        final var config = QueryConfig.DEFAULT.withCacheSize(0).withSearchThreads(1);
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            var request = PageRequest.first(7, BookSort.ascending(BookSort.Key.TITLE));
+            while (request != null) {
+                final var expected = queryService.findReferencesByQuery("title:title", request);
+                final var actual = asyncQueryService.findReferencesByQuery("title:title", request).get();
+                assertEquals(expected, actual);
+                request = expected.hasNext() ? request.next(expected.nextCursor()) : null;
+            }
+        }
+    }
+
+    @Test
+    void shouldThrowCancellationExceptionWhenSlicesAreSearchedInParallel() throws Exception {
+        // Given more segments than fit in one slice, and several search threads
+        final var config = QueryConfig.DEFAULT.withCacheSize(0).withSearchThreads(4);
+        try (QueryServiceImpl queryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            assertTrue(queryService.segmentCount() > 5);
+            final var cancellation = new Cancellation();
+            cancellation.cancel();
+
+            // When & Then
+            assertThrows(CancellationException.class,
+                    () -> queryService.findReferencesByQuery("title:title", PageRequest.first(10), cancellation));
+        }
+    }
+
+    @Test
+    void shouldFinishQueuedSearchesWhenClosed() throws Exception {
+        // Given
+        final var service = new AsyncQueryServiceImpl(new QueryServiceImpl(indexPath, FILE_SERVICE), 1);
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(service.findBooksByPagesRange(0, Integer.MAX_VALUE));
+        }
+
+        // When
+        service.close();
+
+        // Then
+        for (final CompletableFuture<?> future : futures) {
+            assertEquals(NUM_BOOKS, ((List<?>) future.getNow(null)).size());
+        }
+    }
+
+    @Test
+    void shouldCompleteExceptionallyIfSearchFails() {
+        final var future = asyncQueryService.findReferencesByQuery("+author:");
+        final var exception = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+    }
+}
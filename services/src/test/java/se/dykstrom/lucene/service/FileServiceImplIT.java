@@ -18,6 +18,8 @@ package se.dykstrom.lucene.service;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -56,4 +58,29 @@ class FileServiceImplIT {
         // Then
         assertEquals(expected, actual);
     }
+
+    @Test
+    void shouldStreamBooksFromNdjsonFile() throws Exception {
+        // Given
+        final var expected = List.of(
+                new Book(ISBN, TITLE, AUTHOR, NUM_PAGES, DESCRIPTION),
+                new Book("978-9177424765", "Den orörda platsen", AUTHOR, 177, "Noveller")
+        );
+        final var path = Files.createTempFile(null, null);
+        path.toFile().deleteOnExit();
+        final var lines = new StringBuilder();
+        for (final Book book : expected) {
+            lines.append(OBJECT_MAPPER.writeValueAsString(book)).append('\n');
+        }
+        Files.writeString(path, lines);
+
+        // When
+        final List<Book> actual;
+        try (Stream<Book> books = fileService.streamBooks(path)) {
+            actual = books.toList();
+        }
+
+        // Then
+        assertEquals(expected, actual);
+    }
 }
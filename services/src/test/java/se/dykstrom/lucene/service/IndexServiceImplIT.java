@@ -0,0 +1,469 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.FacetCount;
+import se.dykstrom.lucene.model.PageRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexServiceImplIT {
+
+    private static final int NUM_BOOKS = 100;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+
+    private Path bookDir;
+    private Path indexPath;
+    private IndexService indexService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        indexService.close();
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldIndexAllBooksInParallel() throws Exception {
+        // Given
+        for (int i = 0; i < NUM_BOOKS; i++) {
+            writeAsJson(createBook(i));
+        }
+        indexService.close();
+        final var config = IndexConfig.DEFAULT.withIndexThreads(4).withRamBufferSizeMb(1.0);
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE, config);
+
+        // When
+        final var stats = indexService.indexAllBooks(bookDir);
+
+        // Then
+        assertEquals(NUM_BOOKS, stats.documents());
+        assertTrue(stats.documentsPerSecond() > 0);
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(NUM_BOOKS, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertEquals(createBook(42), queryService.findBookByIsbn(createBook(42).isbn()).orElseThrow());
+        }
+    }
+
+    @Test
+    void shouldKeepPreviousIndexIfIndexingFails() throws Exception {
+        // Given
+        writeAsJson(createBook(0));
+        writeAsJson(createBook(1));
+        indexService.indexAllBooks(bookDir);
+        Files.writeString(bookDir.resolve("invalid.json"), "{ invalid");
+
+        // When
+        assertThrows(IOException.class, () -> indexService.indexAllBooks(bookDir));
+
+        // Then
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(2, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+        }
+        assertFalse(Files.exists(indexPath.resolve("generation-2")));
+    }
+
+    @Test
+    void shouldKeepServingCurrentIndexDuringRebuild() throws Exception {
+        // Given
+        writeAsJson(createBook(0));
+        writeAsJson(createBook(1));
+        indexService.indexAllBooks(bookDir);
+        writeAsJson(createBook(2));
+        final var rebuildStarted = new CountDownLatch(1);
+        final var rebuildContinues = new CountDownLatch(1);
+        indexService.close();
+        indexService = new IndexServiceImpl(indexPath, new BlockingFileService(rebuildStarted, rebuildContinues));
+
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(2, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+
+            // When
+            final var rebuild = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return indexService.indexAllBooks(bookDir);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertTrue(rebuildStarted.await(1, TimeUnit.MINUTES));
+
+            // Then the current index is searched until the new one is complete
+            queryService.refresh();
+            assertEquals(2, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+
+            rebuildContinues.countDown();
+            assertEquals(3, rebuild.get(1, TimeUnit.MINUTES).documents());
+            queryService.refresh();
+            assertEquals(3, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertTrue(Files.exists(indexPath.resolve("generation-2")));
+            assertFalse(Files.exists(indexPath.resolve("generation-1")));
+        }
+    }
+
+    @Test
+    void shouldDeleteReplacedIndexWhenLastSearcherIsReleased() throws Exception {
+        // Given
+        writeAsJson(createBook(0));
+        writeAsJson(createBook(1));
+        indexService.indexAllBooks(bookDir);
+
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            final Stream<BookReference> references = queryService.streamReferencesByQuery("description");
+
+            // When
+            writeAsJson(createBook(2));
+            indexService.indexAllBooks(bookDir);
+            queryService.refresh();
+
+            // Then the open stream still reads from the replaced index
+            assertEquals(3, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertTrue(Files.exists(indexPath.resolve("generation-1")));
+            assertEquals(2, references.count());
+            references.close();
+            assertFalse(Files.exists(indexPath.resolve("generation-1")));
+        }
+    }
+
+    @Test
+    void shouldNotDeleteReplacedIndexWhileOtherQueryServiceUsesIt() throws Exception {
+        // Given
+        writeAsJson(createBook(0));
+        indexService.indexAllBooks(bookDir);
+
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE);
+             QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(1, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertEquals(1, otherQueryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+
+            // When one query service moves on to a rebuilt index, and the index is rebuilt once more
+            writeAsJson(createBook(1));
+            indexService.indexAllBooks(bookDir);
+            queryService.refresh();
+            assertEquals(2, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            writeAsJson(createBook(2));
+            indexService.indexAllBooks(bookDir);
+
+            // Then the other query service can still search the first index
+            assertTrue(Files.exists(indexPath.resolve("generation-1")));
+            assertEquals(1, otherQueryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+
+            // When the other query service also moves on
+            otherQueryService.refresh();
+
+            // Then the first index is deleted
+            assertEquals(3, otherQueryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertFalse(Files.exists(indexPath.resolve("generation-1")));
+            assertFalse(Files.exists(indexPath.resolve("generation-1.lock")));
+        }
+    }
+
+    @Test
+    void shouldReplaceIndexBuiltInPlace() throws Exception {
+        // Given an index in the index directory itself, built before the first complete rebuild
+        writeAsJson(createBook(0));
+        indexService.syncDirectory(bookDir);
+
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(1, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+
+            // When
+            writeAsJson(createBook(1));
+            indexService.indexAllBooks(bookDir);
+            queryService.refresh();
+
+            // Then the old index is gone, and the new one is locked by the query service that uses it
+            assertEquals(2, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            try (Stream<Path> files = Files.list(indexPath)) {
+                assertEquals(List.of("current", "generation-1", "generation-1.lock"),
+                        files.map(file -> file.getFileName().toString()).sorted().toList());
+            }
+        }
+    }
+
+    @Test
+    void shouldSyncOnlyChangedFiles() throws Exception {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            writeAsJson(createBook(i));
+        }
+        final var initialStats = indexService.syncDirectory(bookDir);
+        assertEquals(new SyncStats(3, 0, 0, 0, initialStats.elapsed()), initialStats);
+
+        final var changedBook = new Book("978-1", "Changed title", "Author 1", 1, "Changed description");
+        final var changedFile = writeAsJson(changedBook);
+        Files.setLastModifiedTime(changedFile, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        Files.delete(bookDir.resolve("978-2.json"));
+        writeAsJson(createBook(3));
+
+        // When
+        final var stats = indexService.syncDirectory(bookDir);
+
+        // Then
+        assertEquals(new SyncStats(1, 1, 1, 1, stats.elapsed()), stats);
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(3, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+            assertEquals(changedBook, queryService.findBookByIsbn("978-1").orElseThrow());
+            assertTrue(queryService.findBookByIsbn("978-2").isEmpty());
+            assertTrue(queryService.findBookByIsbn("978-3").isPresent());
+        }
+    }
+
+    @Test
+    void shouldNotReindexUnchangedFiles() throws Exception {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            writeAsJson(createBook(i));
+        }
+        indexService.indexAllBooks(bookDir);
+
+        // When
+        final var stats = indexService.syncDirectory(bookDir);
+
+        // Then
+        assertEquals(new SyncStats(0, 0, 0, 3, stats.elapsed()), stats);
+    }
+
+    @Test
+    void shouldNotReindexFilesSyncedByOtherPath() throws Exception {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            writeAsJson(createBook(i));
+        }
+        final Path relativeBookDir = Path.of("").toAbsolutePath().relativize(bookDir);
+        final Path nonNormalizedBookDir = bookDir.resolve("..").resolve(bookDir.getFileName());
+        indexService.syncDirectory(relativeBookDir);
+
+        // When
+        final var absoluteStats = indexService.syncDirectory(bookDir);
+        final var nonNormalizedStats = indexService.syncDirectory(nonNormalizedBookDir);
+
+        // Then
+        assertEquals(new SyncStats(0, 0, 0, 3, absoluteStats.elapsed()), absoluteStats);
+        assertEquals(new SyncStats(0, 0, 0, 3, nonNormalizedStats.elapsed()), nonNormalizedStats);
+    }
+
+    @Test
+    void shouldIndexBooksConcurrently() throws Exception {
+        // Given
+        final List<Path> bookFiles = new ArrayList<>();
+        for (int i = 0; i < NUM_BOOKS; i++) {
+            bookFiles.add(writeAsJson(createBook(i)));
+        }
+
+        // When
+        bookFiles.parallelStream().forEach(bookFile -> {
+            try {
+                indexService.indexBook(bookFile, Durability.SYNC);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // Then
+        // All books are committed when indexBook returns
+        try (Directory directory = FSDirectory.open(indexPath);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(NUM_BOOKS, reader.numDocs());
+        }
+    }
+
+    @Test
+    void shouldCommitAsyncChangesInGroups() throws Exception {
+        // Given
+        indexService.close();
+        final var config = IndexConfig.DEFAULT.withDurability(Durability.ASYNC).withCommitInterval(Duration.ofHours(1));
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE, config);
+        indexService.indexBook(writeAsJson(createBook(0)), Durability.SYNC);
+
+        // When
+        for (int i = 1; i < 10; i++) {
+            indexService.indexBook(writeAsJson(createBook(i)));
+        }
+
+        // Then
+        try (Directory directory = FSDirectory.open(indexPath)) {
+            // Nothing has triggered a commit yet
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(1, reader.numDocs());
+            }
+            indexService.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(10, reader.numDocs());
+            }
+        }
+    }
+
+    @Test
+    void shouldCommitPendingChangesOnClose() throws Exception {
+        // Given
+        indexService.indexBook(writeAsJson(createBook(0)), Durability.ASYNC);
+
+        // When
+        indexService.close();
+
+        // Then
+        try (Directory directory = FSDirectory.open(indexPath);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(1, reader.numDocs());
+        }
+        assertThrows(IllegalStateException.class, () -> indexService.indexBook(writeAsJson(createBook(1))));
+    }
+
+    @Test
+    void shouldIndexBooksWithoutAuthor() throws Exception {
+        // Given
+        final var book = new Book("978-0", "Anonymous", "", 10, "Description 0");
+        writeAsJson(book);
+        writeAsJson(createBook(1));
+
+        // When
+        final var stats = indexService.indexAllBooks(bookDir);
+        indexService.indexBook(writeAsJson(new Book("978-2", "Anonymous", " ", 20, "Description 2")));
+        indexService.commit();
+
+        // Then
+        assertEquals(2, stats.documents());
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(book, queryService.findBookByIsbn("978-0").orElseThrow());
+            assertTrue(queryService.findBookByIsbn("978-2").isPresent());
+            final var pageRequest = PageRequest.first(10).withFacets();
+            final var page = queryService.findReferencesByFields("", "", "", 0, Integer.MAX_VALUE, pageRequest);
+            assertEquals(3, page.references().size());
+            assertEquals(List.of(new FacetCount("Author 1", 1)), page.facets().authors());
+        }
+    }
+
+    @Test
+    void shouldIndexBookStream() throws Exception {
+        // Given
+        final var ndjsonFile = bookDir.resolve("books.ndjson");
+        try (var writer = Files.newBufferedWriter(ndjsonFile)) {
+            for (int i = 0; i < NUM_BOOKS; i++) {
+                writer.write(OBJECT_MAPPER.writeValueAsString(createBook(i)));
+                writer.newLine();
+            }
+        }
+
+        // When
+        final var stats = indexService.indexBookStream(ndjsonFile);
+
+        // Then
+        assertEquals(NUM_BOOKS, stats.documents());
+        try (QueryService queryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            assertEquals(createBook(42), queryService.findBookByIsbn(createBook(42).isbn()).orElseThrow());
+            final var references = queryService.findReferencesByFields("", "", "", 0, Integer.MAX_VALUE);
+            assertEquals(NUM_BOOKS, references.size());
+            assertNull(references.get(0).path());
+        }
+    }
+
+    @Test
+    void shouldNotIndexAnyBooksFromInvalidStream() throws Exception {
+        // Given
+        final var ndjsonFile = bookDir.resolve("books.ndjson");
+        Files.writeString(ndjsonFile, OBJECT_MAPPER.writeValueAsString(createBook(0)) + "\n{ invalid\n");
+
+        // When
+        assertThrows(RuntimeException.class, () -> indexService.indexBookStream(ndjsonFile));
+
+        // Then
+        indexService.commit();
+        try (Directory directory = FSDirectory.open(indexPath);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(0, reader.numDocs());
+        }
+    }
+
+    /**
+     * A file service that blocks the first time it reads a book file, until it is told to continue.
+     */
+    private record BlockingFileService(CountDownLatch started, CountDownLatch continues) implements FileService {
+
+        @Override
+        public Book readBook(final Path path) throws IOException {
+            started.countDown();
+            try {
+                continues.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return FILE_SERVICE.readBook(path);
+        }
+
+        @Override
+        public Book readBook(final BookReference reference) throws IOException {
+            return FILE_SERVICE.readBook(reference);
+        }
+
+        @Override
+        public List<Book> readAllBooks(final List<BookReference> references) throws IOException {
+            return FILE_SERVICE.readAllBooks(references);
+        }
+
+        @Override
+        public Stream<Book> streamBooks(final Path ndjsonFile) throws IOException {
+            return FILE_SERVICE.streamBooks(ndjsonFile);
+        }
+    }
+
+    private static Book createBook(final int index) {
+        return new Book("978-" + index, "Title " + index, "Author " + index, index, "Description " + index);
+    }
+
+    private Path writeAsJson(final Book book) throws IOException {
+        final var path = bookDir.resolve(book.isbn() + ".json");
+        OBJECT_MAPPER.writeValue(path.toFile(), book);
+        return path;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexWarmerIT {
+
+    private static final Book BOOK_0 = new Book("978-0", "Den gamle och havet", "Ernest Hemingway", 125, "");
+    private static final Book BOOK_1 = new Book("978-1", "Hemsöborna", "August Strindberg", 225, "");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+
+    private Path bookDir;
+    private Path indexPath;
+    private QueryService queryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book0.json").toFile(), BOOK_0);
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book1.json").toFile(), BOOK_1);
+        try (IndexService indexService = new IndexServiceImpl(indexPath, FILE_SERVICE)) {
+            indexService.indexAllBooks(bookDir);
+        }
+        queryService = new QueryServiceImpl(indexPath, FILE_SERVICE);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        queryService.close();
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldWarmUpIndex() throws Exception {
+        // Given
+        final var config = WarmUpConfig.DEFAULT.withQueries(List.of("*:*", "author:hemingway"));
+
+        // When
+        final var stats = new IndexWarmer(indexPath, queryService, config).start().get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertTrue(stats.files() > 0);
+        assertTrue(stats.bytes() > 0);
+        assertEquals(2, stats.queries());
+        assertEquals(0, stats.failedQueries());
+        // Each query has been run in four sort orders
+        assertEquals(8, queryService.cacheStats().size());
+    }
+
+    @Test
+    void shouldRunQueriesFromQueryLog() throws Exception {
+        // Given
+        final var queryLog = bookDir.resolve("queries.log");
+        Files.write(queryLog, List.of("# Queries before restart", "", "author:hemingway", "+title:"));
+        final var config = WarmUpConfig.DEFAULT.withPreloadFiles(false).withQueryLog(queryLog);
+
+        // When
+        final var stats = new IndexWarmer(indexPath, queryService, config).start().get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(0, stats.files());
+        assertEquals(3, stats.queries());
+        assertEquals(1, stats.failedQueries());
+    }
+
+    @Test
+    void shouldCompleteWarmUpWithoutIndex() throws Exception {
+        final var otherIndexPath = indexPath.resolve("missing");
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // When
+            final var warmer = new IndexWarmer(otherIndexPath, otherQueryService, WarmUpConfig.DEFAULT);
+            final var stats = warmer.start().get(10, TimeUnit.SECONDS);
+
+            // Then
+            assertEquals(0, stats.files());
+            assertEquals(1, stats.queries());
+            assertEquals(1, stats.failedQueries());
+        }
+    }
+}
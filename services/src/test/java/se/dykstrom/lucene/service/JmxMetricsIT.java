@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.management.MBeanServer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JmxMetricsIT {
+
+    private static final Book BOOK_0 = new Book("978-0", "Den gamle och havet", "Ernest Hemingway", 125, "");
+    private static final Book BOOK_1 = new Book("978-1", "Hemsöborna", "August Strindberg", 225, "");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+    private static final MBeanServer SERVER = ManagementFactory.getPlatformMBeanServer();
+
+    private Path bookDir;
+    private Path indexPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book0.json").toFile(), BOOK_0);
+        OBJECT_MAPPER.writeValue(bookDir.resolve("book1.json").toFile(), BOOK_1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldPublishIndexMetrics() throws Exception {
+        try (IndexServiceImpl indexService = new IndexServiceImpl(indexPath, FILE_SERVICE);
+             Closeable ignored = JmxMetrics.register("index", indexService)) {
+            // When
+            indexService.indexAllBooks(bookDir);
+
+            // Then
+            final var name = JmxMetrics.objectName("IndexService", "index");
+            assertEquals(2L, SERVER.getAttribute(name, "DocumentsIndexed"));
+            assertTrue((Long) SERVER.getAttribute(name, "BytesRead") > 0);
+            assertEquals(1, SERVER.getAttribute(name, "SegmentCount"));
+            assertTrue((Long) SERVER.getAttribute(name, "IndexSizeBytes") > 0);
+            // One commit of the rebuilt index, since no writer was open with changes to commit before it
+            assertEquals(1L, SERVER.getAttribute(JmxMetrics.objectName("IndexService", "index", "commit"), "Count"));
+            assertEquals(2L, SERVER.getAttribute(JmxMetrics.objectName("IndexService", "index", "readBook"), "Count"));
+        }
+    }
+
+    @Test
+    void shouldPublishQueryMetrics() throws Exception {
+        // Given
+        try (IndexService indexService = new IndexServiceImpl(indexPath, FILE_SERVICE)) {
+            indexService.indexAllBooks(bookDir);
+        }
+
+        try (QueryServiceImpl queryService = new QueryServiceImpl(indexPath, FILE_SERVICE);
+             Closeable ignored = JmxMetrics.register("query", queryService)) {
+            // When
+            queryService.findReferencesByQuery("*:*");
+            queryService.findReferencesByQuery("*:*");
+
+            // Then
+            final var name = JmxMetrics.objectName("QueryService", "query");
+            final var latencyName = JmxMetrics.objectName("QueryService", "query", "findReferencesByQuery");
+            assertEquals(2L, SERVER.getAttribute(name, "Hits"));
+            assertEquals(1L, SERVER.getAttribute(name, "CacheHits"));
+            assertEquals(1, SERVER.getAttribute(name, "SegmentCount"));
+            assertTrue((Long) SERVER.getAttribute(name, "IndexSizeBytes") > 0);
+            assertEquals(2L, SERVER.getAttribute(latencyName, "Count"));
+            final double p50 = (Double) SERVER.getAttribute(latencyName, "P50Millis");
+            final double max = (Double) SERVER.getAttribute(latencyName, "MaxMillis");
+            assertTrue(p50 > 0 && p50 <= max);
+            assertEquals(2L, SERVER.getAttribute(JmxMetrics.objectName("QueryService", "query", "storedFields"),
+                    "Count"));
+
+            // When
+            SERVER.invoke(latencyName, "reset", null, null);
+
+            // Then
+            assertEquals(0L, SERVER.getAttribute(latencyName, "Count"));
+        }
+        assertFalse(SERVER.isRegistered(JmxMetrics.objectName("QueryService", "query")));
+    }
+
+    @Test
+    void shouldComputePercentilesWithinBucketWidth() {
+        // Given
+        final var histogram = new LatencyHistogram();
+
+        // When
+        for (long millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        // Then
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+        assertEquals(50.0, histogram.getP50Millis(), 50.0 * 0.125);
+        assertEquals(99.0, histogram.getP99Millis(), 99.0 * 0.125);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.001);
+        assertTrue(histogram.getP50Millis() >= 50.0);
+        assertTrue(histogram.getP99Millis() >= 99.0);
+    }
+}
@@ -17,9 +17,17 @@
 package se.dykstrom.lucene.service;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.lucene.util.IOUtils;
@@ -27,8 +35,15 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookFacets;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.FacetCount;
+import se.dykstrom.lucene.model.PageRangeCount;
+import se.dykstrom.lucene.model.PageRequest;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -70,16 +85,18 @@ class QueryServiceImplIT {
     static void setUpClass() throws IOException {
         indexPath = Files.createTempDirectory("tempIndex");
 
-        IndexService indexService = new IndexServiceImpl(indexPath, FILE_SERVICE);
-        indexService.indexBook(writeAsJson(BOOK_0));
-        indexService.indexBook(writeAsJson(BOOK_1));
-        indexService.indexBook(writeAsJson(BOOK_2));
+        try (IndexService indexService = new IndexServiceImpl(indexPath, FILE_SERVICE)) {
+            indexService.indexBook(writeAsJson(BOOK_0));
+            indexService.indexBook(writeAsJson(BOOK_1));
+            indexService.indexBook(writeAsJson(BOOK_2));
+        }
 
         queryService = new QueryServiceImpl(indexPath, FILE_SERVICE);
     }
 
     @AfterAll
     static void tearDownClass() throws IOException {
+        queryService.close();
         IOUtils.rm(indexPath);
     }
 
@@ -152,6 +169,75 @@ class QueryServiceImplIT {
         assertEquals(0, books.size());
     }
 
+    @Test
+    void shouldFuzzyFindBooksByFullAuthorName() throws Exception {
+        // When
+        // Misspelling of "Ernest Hemingway", with accents
+        final var books = queryService.findBooksByAuthor("Ernst Hémingvay");
+
+        // Then
+        assertEquals(3, books.size());
+    }
+
+    @Test
+    void shouldNotFuzzyFindBooksByOtherAuthor() throws Exception {
+        // When
+        final var books = queryService.findBooksByAuthor("Hjalmar Söderberg");
+
+        // Then
+        assertEquals(0, books.size());
+    }
+
+    @Test
+    void shouldFuzzyFindBooksByAuthorsWithShortNames() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        final var kingBook = new Book("978-1444720693", "The Shining", "Stephen King", 497, "");
+        final var smithBook = new Book("978-0140432084", "The Wealth of Nations", "Adam Smith", 1264, "");
+        try (IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            indexService.indexBook(writeAsJson(kingBook));
+            indexService.indexBook(writeAsJson(smithBook));
+        }
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // When & Then
+            // One typo in the middle of four and five letter names, which changes all their n-grams
+            assertEquals(List.of(kingBook), otherQueryService.findBooksByAuthor("Kong"));
+            assertEquals(List.of(kingBook), otherQueryService.findBooksByAuthor("Stephen Kong"));
+            assertEquals(List.of(smithBook), otherQueryService.findBooksByAuthor("Smyth"));
+            assertEquals(List.of(smithBook), otherQueryService.findBooksByAuthor("Adam Smtih"));
+            // Two typos are too many for short names
+            assertEquals(List.of(), otherQueryService.findBooksByAuthor("Kang Smyta"));
+            assertEquals(List.of(), otherQueryService.findBooksByAuthor("Smota"));
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldNotFuzzyFindBooksByAuthorsWithSimilarNames() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        final var gainesBook = new Book("978-0679723080", "A Lesson Before Dying", "Ernest Gaines", 256, "");
+        final var flemingtonBook = new Book("978-0000000001", "Unknown", "Ian Flemington", 100, "");
+        try (IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            indexService.indexBook(writeAsJson(BOOK_0));
+            indexService.indexBook(writeAsJson(gainesBook));
+            indexService.indexBook(writeAsJson(flemingtonBook));
+        }
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // When
+            // Shares the first name, and nothing of the last name
+            final var booksByFullName = otherQueryService.findBooksByAuthor("Ernest Hemingway");
+            // Shares as many n-grams with "Flemington" as the misspelling "Hem0ngwa1" does
+            final var booksByLastName = otherQueryService.findBooksByAuthor("Hemingway");
+
+            // Then
+            assertEquals(List.of(BOOK_0), booksByFullName);
+            assertEquals(List.of(BOOK_0), booksByLastName);
+            assertEquals(List.of(flemingtonBook), otherQueryService.findBooksByAuthor("Ian Flemington"));
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
     @Test
     void shouldNotFindBooksByPagesRange() throws Exception {
         // When
@@ -274,12 +360,521 @@ class QueryServiceImplIT {
         assertTrue(books.contains(BOOK_2));
     }
 
+    @Test
+    void shouldStreamReferencesByQuery() throws Exception {
+        // Given
+        final var query = "+author:Hemingway AND +description:noveller";
+        final var expectedReferences = queryService.findReferencesByQuery(query);
+
+        // When
+        try (Stream<BookReference> stream = queryService.streamReferencesByQuery(query)) {
+            final var references = stream.toList();
+
+            // Then
+            assertEquals(expectedReferences, references);
+        }
+    }
+
+    @Test
+    void shouldStreamReferencesByFields() throws Exception {
+        // Given
+        final var expectedReferences = queryService.findReferencesByFields("Hemingway", "", "", 0, 0);
+
+        // When
+        try (Stream<BookReference> stream = queryService.streamReferencesByFields("Hemingway", "", "", 0, 0)) {
+            final var references = stream.limit(2).toList();
+
+            // Then
+            assertEquals(expectedReferences.subList(0, 2), references);
+        }
+    }
+
+    @Test
+    void shouldStreamReferencesFromIndexAsItWasWhenStreamWasOpened() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // Given
+            indexService.indexBook(writeAsJson(BOOK_0));
+
+            try (Stream<BookReference> stream = otherQueryService.streamReferencesByQuery("author:hemingway")) {
+                // When
+                indexService.indexBook(writeAsJson(BOOK_1));
+                otherQueryService.refresh();
+
+                // Then
+                assertEquals(List.of(ISBN_0), stream.map(BookReference::isbn).toList());
+                assertEquals(2, otherQueryService.findReferencesByQuery("author:hemingway").size());
+            }
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldFindReferencesByFieldsPageByPage() throws Exception {
+        // When
+        final var page0 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, PageRequest.first(2));
+        final var page1 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0,
+                PageRequest.after(page0.nextCursor(), 2));
+
+        // Then
+        assertEquals(3, page0.totalHits());
+        assertEquals(2, page0.references().size());
+        assertTrue(page0.hasNext());
+        assertEquals(3, page1.totalHits());
+        assertEquals(1, page1.references().size());
+        assertFalse(page1.hasNext());
+
+        final List<BookReference> references = new ArrayList<>(page0.references());
+        references.addAll(page1.references());
+        assertEquals(queryService.findReferencesByFields("Hemingway", "", "", 0, 0), references);
+    }
+
+    @Test
+    void shouldFindReferencesAtOffset() throws Exception {
+        // Given
+        final var references = queryService.findReferencesByFields("Hemingway", "", "", 0, 0);
+        final var request = PageRequest.first(1);
+
+        // When
+        final var page1 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, request.withOffset(1));
+        final var page2 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0,
+                request.next(page1.nextCursor()));
+        final var page3 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, request.withOffset(3));
+
+        // Then
+        assertEquals(references.subList(1, 2), page1.references());
+        assertTrue(page1.hasNext());
+        assertEquals(references.subList(2, 3), page2.references());
+        assertFalse(page2.hasNext());
+        assertEquals(List.of(), page3.references());
+        assertEquals(3, page3.totalHits());
+        assertFalse(page3.hasNext());
+    }
+
+    @Test
+    void shouldFindReferencesAtOffsetAfterCursor() throws Exception {
+        // Given
+        final var request = PageRequest.first(1, BookSort.descending(BookSort.Key.PAGES));
+        final var page0 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, request);
+
+        // When
+        final var page2 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0,
+                request.next(page0.nextCursor()).withOffset(1));
+
+        // Then
+        assertEquals(List.of(ISBN_0), page2.references().stream().map(BookReference::isbn).toList());
+        assertFalse(page2.hasNext());
+    }
+
+    @Test
+    void shouldFindReferencesByQueryOnOnePage() throws Exception {
+        // When
+        final var page = queryService.findReferencesByQuery("+title:Den", PageRequest.first(2));
+
+        // Then
+        assertEquals(2, page.totalHits());
+        assertFalse(page.hasNext());
+
+        final List<Book> books = FILE_SERVICE.readAllBooks(page.references());
+        assertTrue(books.contains(BOOK_0));
+        assertTrue(books.contains(BOOK_1));
+    }
+
+    @Test
+    void shouldFindReferencesSortedByPagesPageByPage() throws Exception {
+        // Given
+        final var request = PageRequest.first(2, BookSort.descending(BookSort.Key.PAGES));
+
+        // When
+        final var page0 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, request);
+        final var page1 = queryService.findReferencesByFields("Hemingway", "", "", 0, 0,
+                request.next(page0.nextCursor()));
+
+        // Then
+        assertEquals(List.of(ISBN_2, ISBN_1), page0.references().stream().map(BookReference::isbn).toList());
+        assertEquals(List.of(ISBN_0), page1.references().stream().map(BookReference::isbn).toList());
+        assertEquals(3, page1.totalHits());
+        assertFalse(page1.hasNext());
+        assertTrue(page0.references().stream().allMatch(reference -> reference.score() > 0));
+    }
+
+    @Test
+    void shouldFindReferencesSortedByTitle() throws Exception {
+        // When
+        final var page = queryService.findReferencesByQuery("author:hemingway",
+                PageRequest.first(10, BookSort.ascending(BookSort.Key.TITLE)));
+
+        // Then
+        final var titles = page.references().stream().map(BookReference::title).toList();
+        assertEquals(List.of(TITLE_0, TITLE_1, TITLE_2), titles);
+    }
+
+    @Test
+    void shouldNotAcceptCursorFromOtherSortOrder() throws Exception {
+        // Given
+        final var page = queryService.findReferencesByQuery("author:hemingway", PageRequest.first(1));
+
+        // When & Then
+        final var request = PageRequest.first(1, BookSort.ascending(BookSort.Key.AUTHOR)).next(page.nextCursor());
+        assertThrows(IllegalArgumentException.class,
+                () -> queryService.findReferencesByQuery("author:hemingway", request));
+    }
+
+    @Test
+    void shouldCountFacetsForAllHits() throws Exception {
+        // When
+        final var request = PageRequest.first(1).withFacets();
+        final var page = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, request);
+
+        // Then
+        assertEquals(1, page.references().size());
+        assertEquals(List.of(new FacetCount(AUTHOR, 3)), page.facets().authors());
+        final var pageRanges = page.facets().pageRanges();
+        assertEquals(6, pageRanges.size());
+        assertEquals(new PageRangeCount(100, 199, 2), pageRanges.get(1));
+        assertEquals(new PageRangeCount(200, 299, 1), pageRanges.get(2));
+        assertEquals(3, pageRanges.stream().mapToLong(PageRangeCount::count).sum());
+    }
+
+    @Test
+    void shouldNotCountFacetsUnlessRequested() throws Exception {
+        // When
+        final var page = queryService.findReferencesByFields("Hemingway", "", "", 0, 0, PageRequest.first(1));
+
+        // Then
+        assertEquals(BookFacets.EMPTY, page.facets());
+    }
+
+    @Test
+    void shouldNotSearchWhenCancelled() throws Exception {
+        // Given
+        final var cancellation = new Cancellation();
+        cancellation.cancel();
+
+        // When & Then
+        assertThrows(CancellationException.class,
+                () -> queryService.findReferencesByQuery("author:ernest", PageRequest.first(10), cancellation));
+    }
+
+    @Test
+    void shouldNotAcceptInvalidCursor() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> queryService.findReferencesByQuery("+title:Den", PageRequest.after("invalid", 2)));
+    }
+
+    @Test
+    void shouldNotAcceptTruncatedCursor() throws Exception {
+        // Given
+        final var request = PageRequest.first(1, BookSort.ascending(BookSort.Key.AUTHOR));
+        final var cursor = queryService.findReferencesByQuery("author:hemingway", request).nextCursor();
+        final byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        final var truncatedCursor = encodeCursor(Arrays.copyOf(bytes, bytes.length - 1));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> queryService.findReferencesByQuery("author:hemingway", request.next(truncatedCursor)));
+    }
+
+    @Test
+    void shouldNotAcceptCursorWithOversizedSortValue() {
+        // Given
+        final var request = PageRequest.first(1, BookSort.ascending(BookSort.Key.AUTHOR));
+        final var buffer = ByteBuffer.allocate(22).put((byte) 2).putInt(0).putFloat(0).putInt(1).put((byte) 'B');
+        final var oversizedCursor = encodeCursor(buffer.putInt(Integer.MAX_VALUE).array());
+        final var negativeCursor = encodeCursor(buffer.putInt(buffer.position() - Integer.BYTES, -1).array());
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> queryService.findReferencesByQuery("author:hemingway", request.next(oversizedCursor)));
+        assertThrows(IllegalArgumentException.class,
+                () -> queryService.findReferencesByQuery("author:hemingway", request.next(negativeCursor)));
+    }
+
     @Test
     void shouldNotParseInvalidQuery() {
         // When & Then
         assertThrows(IllegalArgumentException.class, () -> queryService.findReferencesByQuery("+author:"));
     }
 
+    @Test
+    void shouldFindBookIndexedAfterRefresh() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // Given
+            indexService.indexBook(writeAsJson(BOOK_0));
+            assertEquals(List.of(BOOK_0), otherQueryService.findBooksByAuthor("Hemingway"));
+
+            // When
+            indexService.indexBook(writeAsJson(BOOK_1));
+            otherQueryService.refresh();
+
+            // Then
+            final var books = otherQueryService.findBooksByAuthor("Hemingway");
+            assertEquals(2, books.size());
+            assertTrue(books.contains(BOOK_0));
+            assertTrue(books.contains(BOOK_1));
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldFindBooksWithAllDirectoryTypes() throws Exception {
+        for (final DirectoryType directoryType : DirectoryType.values()) {
+            final var config = QueryConfig.DEFAULT.withDirectoryType(directoryType);
+            try (QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+                assertEquals(Optional.of(BOOK_0), otherQueryService.findBookByIsbn(ISBN_0), directoryType.name());
+            }
+        }
+    }
+
+    @Test
+    void shouldFindBookIndexedAfterRefreshWithPreloadedDirectory() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        final var bookDir = Files.createTempDirectory("tempBooks");
+        final var indexConfig = IndexConfig.DEFAULT.withDirectoryType(DirectoryType.PRELOAD);
+        final var queryConfig = QueryConfig.DEFAULT.withDirectoryType(DirectoryType.PRELOAD);
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE, queryConfig);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE, indexConfig)) {
+            // Given
+            indexService.indexBook(writeAsJson(BOOK_0));
+            assertEquals(List.of(BOOK_0), otherQueryService.findBooksByAuthor("Hemingway"));
+
+            // When
+            // Replacing the contents of the index deletes the old index files
+            OBJECT_MAPPER.writeValue(bookDir.resolve("book1.json").toFile(), BOOK_1);
+            indexService.indexAllBooks(bookDir);
+            otherQueryService.refresh();
+
+            // Then
+            assertEquals(List.of(BOOK_1), otherQueryService.findBooksByAuthor("Hemingway"));
+            // The changes have been written through to disk
+            try (QueryService diskQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE)) {
+                assertEquals(List.of(BOOK_1), diskQueryService.findBooksByAuthor("Hemingway"));
+            }
+        } finally {
+            IOUtils.rm(otherIndexPath, bookDir);
+        }
+    }
+
+    @Test
+    void shouldFindBooksWithoutReadingBookFiles() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        final var config = IndexConfig.DEFAULT.withBookStorage(BookStorage.INDEX);
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE, config)) {
+            // Given
+            final var bookFile = writeAsJson(BOOK_0);
+            indexService.indexBook(bookFile);
+            Files.delete(bookFile);
+
+            // When
+            final var optionalBook = otherQueryService.findBookByIsbn(ISBN_0);
+
+            // Then
+            assertEquals(Optional.of(BOOK_0), optionalBook);
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldFindBooksByReadingBookFiles() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        final var config = IndexConfig.DEFAULT.withBookStorage(BookStorage.FILE);
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE, config)) {
+            // Given
+            indexService.indexBook(writeAsJson(BOOK_0));
+            indexService.indexBook(writeAsJson(BOOK_1));
+
+            // When
+            final var books = otherQueryService.findBooksByPagesRange(100, 200);
+
+            // Then
+            assertEquals(2, books.size());
+            assertTrue(books.contains(BOOK_0));
+            assertTrue(books.contains(BOOK_1));
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldAnswerRepeatedQueriesFromCache() throws Exception {
+        try (QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE)) {
+            // Given
+            final var references = otherQueryService.findReferencesByFields("hemingway", "", "", 0, 0);
+            final var book = otherQueryService.findBookByIsbn(ISBN_0);
+            assertEquals(new CacheStats(0, 2, 2), otherQueryService.cacheStats());
+
+            // When
+            final var cachedReferences = otherQueryService.findReferencesByFields("Hemingway", "", "", 0, 0);
+            final var cachedBook = otherQueryService.findBookByIsbn(ISBN_0);
+
+            // Then
+            assertEquals(references, cachedReferences);
+            assertEquals(book, cachedBook);
+            assertEquals(new CacheStats(2, 2, 2), otherQueryService.cacheStats());
+        }
+    }
+
+    @Test
+    void shouldLimitCacheByNumberOfHits() throws Exception {
+        final var config = QueryConfig.DEFAULT.withCacheSize(3);
+        try (QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            // Given a result with three hits that fills the cache
+            otherQueryService.findReferencesByFields("hemingway", "", "", 0, 0);
+            assertEquals(new CacheStats(0, 1, 1), otherQueryService.cacheStats());
+
+            // When
+            otherQueryService.findBookByIsbn(ISBN_0);
+            otherQueryService.findReferencesByFields("hemingway", "", "", 0, 0);
+
+            // Then the first result was evicted to make room for the second
+            assertEquals(new CacheStats(0, 3, 1), otherQueryService.cacheStats());
+        }
+    }
+
+    @Test
+    void shouldNotCacheResultsLargerThanCache() throws Exception {
+        final var config = QueryConfig.DEFAULT.withCacheSize(2);
+        try (QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            // When
+            otherQueryService.findReferencesByFields("hemingway", "", "", 0, 0);
+            otherQueryService.findBookByIsbn(ISBN_0);
+            otherQueryService.findBookByIsbn(ISBN_0);
+
+            // Then
+            assertEquals(new CacheStats(1, 2, 1), otherQueryService.cacheStats());
+        }
+    }
+
+    @Test
+    void shouldInvalidateCacheWhenIndexChanges() throws Exception {
+        final var otherIndexPath = Files.createTempDirectory("tempIndex");
+        try (QueryService otherQueryService = new QueryServiceImpl(otherIndexPath, FILE_SERVICE);
+             IndexService indexService = new IndexServiceImpl(otherIndexPath, FILE_SERVICE)) {
+            // Given
+            indexService.indexBook(writeAsJson(BOOK_0));
+            assertEquals(1, otherQueryService.findReferencesByQuery("author:hemingway").size());
+
+            // When
+            indexService.indexBook(writeAsJson(BOOK_1));
+            otherQueryService.refresh();
+
+            // Then
+            assertEquals(2, otherQueryService.findReferencesByQuery("author:hemingway").size());
+            assertEquals(new CacheStats(0, 2, 1), otherQueryService.cacheStats());
+        } finally {
+            IOUtils.rm(otherIndexPath);
+        }
+    }
+
+    @Test
+    void shouldNotCacheWhenCacheIsDisabled() throws Exception {
+        final var config = QueryConfig.DEFAULT.withCacheSize(0);
+        try (QueryService otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            // When
+            otherQueryService.findBookByIsbn(ISBN_0);
+            otherQueryService.findBookByIsbn(ISBN_0);
+
+            // Then
+            assertEquals(CacheStats.EMPTY, otherQueryService.cacheStats());
+        }
+    }
+
+    @Test
+    void shouldReportSlowQueriesWithPhaseTimings() throws Exception {
+        final var config = QueryConfig.DEFAULT.withSlowQueryThreshold(Duration.ZERO);
+        final List<SlowQuery> slowQueries = new ArrayList<>();
+        try (QueryServiceImpl otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            otherQueryService.setSlowQueryListener(slowQueries::add);
+
+            // When
+            otherQueryService.findReferencesByQuery("title:den*");
+            otherQueryService.findReferencesByQuery("title:den*");
+
+            // Then
+            assertEquals(2, slowQueries.size());
+            final var slowQuery = slowQueries.get(0);
+            assertEquals("findReferencesByQuery", slowQuery.method());
+            assertEquals("title:den*", slowQuery.query());
+            // The wildcard has been expanded to the matching terms
+            assertTrue(slowQuery.rewrittenQuery().contains("title:den"), slowQuery.rewrittenQuery());
+            assertEquals(2, slowQuery.hits());
+            assertFalse(slowQuery.cached());
+            assertTrue(slowQuery.phases().keySet().containsAll(
+                    List.of(QueryPhase.PARSE, QueryPhase.REWRITE, QueryPhase.SEARCH, QueryPhase.STORED_FIELDS)));
+            assertTrue(slowQuery.profile().isEmpty());
+            // The second query was answered from the cache
+            assertTrue(slowQueries.get(1).cached());
+            assertTrue(SlowQueryLog.toJson(slowQuery).startsWith("{\"method\":\"findReferencesByQuery\""));
+        }
+    }
+
+    @Test
+    void shouldProfileSampledQueries() throws Exception {
+        final var config = QueryConfig.DEFAULT.withSlowQueryThreshold(Duration.ofHours(1)).withProfileSampleRate(1.0);
+        final List<SlowQuery> slowQueries = new ArrayList<>();
+        try (QueryServiceImpl otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            otherQueryService.setSlowQueryListener(slowQueries::add);
+
+            // When
+            final var page = otherQueryService.findReferencesByQuery("hemingway AND noveller", PageRequest.first(10));
+            otherQueryService.findReferencesByQuery("hemingway AND noveller", PageRequest.first(10));
+
+            // Then
+            assertEquals(2, page.totalHits());
+            assertEquals(2, slowQueries.size());
+            for (final SlowQuery slowQuery : slowQueries) {
+                assertEquals("findReferencePageByQuery", slowQuery.method());
+                // Profiled queries are never answered from the cache
+                assertFalse(slowQuery.cached());
+                assertFalse(slowQuery.profile().isEmpty());
+                assertEquals("BooleanQuery", slowQuery.profile().get(0).type());
+                assertEquals(2, slowQuery.profile().get(0).children().size());
+            }
+            assertTrue(SlowQueryLog.toJson(slowQueries.get(0)).contains("\"profile\":[{\"type\":\"BooleanQuery\""));
+        }
+    }
+
+    @Test
+    void shouldNotReportFastQueries() throws Exception {
+        final var config = QueryConfig.DEFAULT.withSlowQueryThreshold(Duration.ofHours(1));
+        final List<SlowQuery> slowQueries = new ArrayList<>();
+        try (QueryServiceImpl otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE, config)) {
+            otherQueryService.setSlowQueryListener(slowQueries::add);
+
+            // When
+            otherQueryService.findBookByIsbn(ISBN_0);
+
+            // Then
+            assertTrue(slowQueries.isEmpty());
+        }
+    }
+
+    @Test
+    void shouldNotQueryAfterClose() throws Exception {
+        // Given
+        final var otherQueryService = new QueryServiceImpl(indexPath, FILE_SERVICE);
+        assertTrue(otherQueryService.findBookByIsbn(ISBN_0).isPresent());
+
+        // When
+        otherQueryService.close();
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> otherQueryService.findBookByIsbn(ISBN_0));
+    }
+
+    private static String encodeCursor(final byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
     private static Path writeAsJson(final Book book) throws IOException {
         final var path = Files.createTempFile(null, null);
         final var file = path.toFile();
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+import se.dykstrom.lucene.model.BookReference;
+import se.dykstrom.lucene.model.BookSort;
+import se.dykstrom.lucene.model.PageRangeCount;
+import se.dykstrom.lucene.model.PageRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedIndexIT {
+
+    private static final int NUM_BOOKS = 40;
+    private static final int SHARDS = 4;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+
+    private Path bookDir;
+    private Path indexPath;
+    private IndexService indexService;
+    private QueryService queryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        for (int i = 1; i <= NUM_BOOKS; i++) {
+            writeAsJson(createBook(i));
+        }
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE, IndexConfig.DEFAULT.withShards(SHARDS));
+        indexService.indexAllBooks(bookDir);
+        queryService = new QueryServiceImpl(indexPath, FILE_SERVICE, QueryConfig.DEFAULT.withShards(SHARDS));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        queryService.close();
+        indexService.close();
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldRouteBooksToShardsByIsbn() throws Exception {
+        int documents = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            try (var directory = FSDirectory.open(indexPath.resolve("generation-1/shard-" + shard));
+                 var reader = DirectoryReader.open(directory)) {
+                assertTrue(reader.numDocs() > 0, "shard " + shard + " is empty");
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    final String isbn = reader.document(doc).get("isbn");
+                    assertEquals(shard, Shards.shardOf(isbn, SHARDS));
+                }
+                documents += reader.numDocs();
+            }
+        }
+        assertEquals(NUM_BOOKS, documents);
+    }
+
+    @Test
+    void shouldFindBooksInAllShards() throws Exception {
+        assertEquals(NUM_BOOKS, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+        for (int i = 1; i <= NUM_BOOKS; i++) {
+            assertEquals(createBook(i), queryService.findBookByIsbn(createBook(i).isbn()).orElseThrow());
+        }
+        assertTrue(queryService.findBookByIsbn("978-999").isEmpty());
+    }
+
+    @Test
+    void shouldRankHitsFromAllShardsTogether() throws Exception {
+        // When
+        final List<BookReference> references = queryService.findReferencesByQuery("havet");
+
+        // Then the books that mention the word most often come first, whatever shard they are in
+        assertEquals(NUM_BOOKS, references.size());
+        final List<String> isbns = references.stream().limit(3).map(BookReference::isbn).toList();
+        assertEquals(List.of(isbn(NUM_BOOKS), isbn(NUM_BOOKS - 1), isbn(NUM_BOOKS - 2)), isbns);
+        for (int i = 1; i < references.size(); i++) {
+            assertTrue(references.get(i - 1).score() >= references.get(i).score());
+        }
+    }
+
+    @Test
+    void shouldFindSortedPagesInAllShards() throws Exception {
+        // Given
+        final var request = PageRequest.first(15, BookSort.descending(BookSort.Key.PAGES)).withFacets();
+
+        // When
+        final var page0 = queryService.findReferencesByQuery("havet", request);
+        final var page1 = queryService.findReferencesByQuery("havet", request.next(page0.nextCursor()));
+
+        // Then
+        assertEquals(NUM_BOOKS, page0.totalHits());
+        assertEquals(isbn(NUM_BOOKS), page0.references().get(0).isbn());
+        assertEquals(isbn(NUM_BOOKS - 15), page1.references().get(0).isbn());
+        assertEquals(NUM_BOOKS, page0.facets().pageRanges().stream().mapToLong(PageRangeCount::count).sum());
+        final Set<String> isbns = new HashSet<>();
+        page0.references().forEach(reference -> isbns.add(reference.isbn()));
+        page1.references().forEach(reference -> isbns.add(reference.isbn()));
+        assertEquals(30, isbns.size());
+    }
+
+    @Test
+    void shouldFindBookAddedToOneShardAfterRefresh() throws Exception {
+        // Given
+        final Book book = new Book("978-100", "Nytt", "Ny Författare", 100, "havet");
+
+        // When
+        indexService.indexBook(writeAsJson(book), Durability.SYNC);
+        queryService.refresh();
+
+        // Then
+        assertEquals(book, queryService.findBookByIsbn(book.isbn()).orElseThrow());
+        assertEquals(NUM_BOOKS + 1, queryService.findReferencesByQuery("havet").size());
+    }
+
+    @Test
+    void shouldMoveBookToOtherShardWhenIsbnChanges() throws Exception {
+        // Given a book whose new ISBN belongs to another shard
+        final Book book = createBook(1);
+        String newIsbn = "978-1000";
+        for (int i = 1001; Shards.shardOf(newIsbn, SHARDS) == Shards.shardOf(book.isbn(), SHARDS); i++) {
+            newIsbn = "978-" + i;
+        }
+        final Path bookFile = bookDir.resolve(book.isbn() + ".json");
+        OBJECT_MAPPER.writeValue(bookFile.toFile(), new Book(newIsbn, book.title(), book.author(), book.pages(),
+                book.description()));
+        Files.setLastModifiedTime(bookFile, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        // When
+        final var stats = indexService.syncDirectory(bookDir);
+        queryService.refresh();
+
+        // Then
+        assertEquals(1, stats.updated());
+        assertTrue(queryService.findBookByIsbn(book.isbn()).isEmpty());
+        assertEquals(newIsbn, queryService.findBookByIsbn(newIsbn).orElseThrow().isbn());
+        assertEquals(NUM_BOOKS, queryService.findBooksByPagesRange(0, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void shouldSliceEachShardSeparately() throws Exception {
+        try (var source = new SearcherSource(indexPath, SHARDS, DirectoryType.AUTO, Duration.ofMinutes(1), 2, "test")) {
+            source.withSearcher(searcher -> {
+                assertEquals(SHARDS, ((ShardedIndexSearcher) searcher).shardCount());
+                for (final IndexSearcher.LeafSlice slice : searcher.getSlices()) {
+                    final LeafReaderContext first = slice.leaves[0];
+                    for (final LeafReaderContext leaf : slice.leaves) {
+                        assertEquals(first.parent, leaf.parent);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    @Test
+    void shouldReleaseAllShardReadersAfterRefreshOfOneShard() throws Exception {
+        final List<Directory> directories = new ArrayList<>();
+        for (final Path shardPath : Shards.paths(indexPath.resolve("generation-1"), SHARDS)) {
+            directories.add(FSDirectory.open(shardPath));
+        }
+        try {
+            // Given
+            final var manager = new ShardedSearcherManager(directories, 1, null);
+            final IndexSearcher before = manager.acquire();
+            final Set<DirectoryReader> readers = new HashSet<>(SearcherSource.shardReaders(before));
+
+            // When
+            indexService.indexBook(writeAsJson(new Book("978-100", "Nytt", "Ny Författare", 100, "havet")),
+                    Durability.SYNC);
+            assertTrue(manager.maybeRefresh());
+            final IndexSearcher after = manager.acquire();
+            readers.addAll(SearcherSource.shardReaders(after));
+            manager.release(before);
+            manager.release(after);
+            manager.close();
+
+            // Then
+            assertEquals(SHARDS + 1, readers.size());
+            for (final DirectoryReader reader : readers) {
+                assertEquals(0, reader.getRefCount());
+            }
+        } finally {
+            IOUtils.close(directories);
+        }
+    }
+
+    @Test
+    void shouldNotOpenIndexWithOtherNumberOfShards() throws Exception {
+        // Given
+        indexService.close();
+
+        // When
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE, IndexConfig.DEFAULT.withShards(2));
+        final var e = assertThrows(IllegalStateException.class, () -> indexService.indexAllBooks(bookDir));
+
+        // Then
+        assertEquals("index " + indexPath.resolve("generation-1") + " has 4 shards, not 2", e.getMessage());
+        assertFalse(Files.exists(indexPath.resolve("generation-2")));
+    }
+
+    private static String isbn(final int index) {
+        return "978-" + index;
+    }
+
+    /**
+     * Creates a book whose description mentions "havet" as many times as the index of the book.
+     */
+    private static Book createBook(final int index) {
+        final String description = "havet ".repeat(index).strip();
+        return new Book(isbn(index), "Title " + index, "Author " + index, index, description);
+    }
+
+    private Path writeAsJson(final Book book) throws IOException {
+        final var path = bookDir.resolve(book.isbn() + ".json");
+        OBJECT_MAPPER.writeValue(path.toFile(), book);
+        return path;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2022 Johan Dykström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package se.dykstrom.lucene.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.dykstrom.lucene.model.Book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SuggestServiceImplIT {
+
+    private static final Book BOOK_0 = new Book("978-0", "Den gamle och havet", "Ernest Hemingway", 125, "");
+    private static final Book BOOK_1 = new Book("978-1", "Snön på Kilimanjaro", "Ernest Hemingway", 270, "");
+    private static final Book BOOK_2 = new Book("978-2", "Hemsöborna", "August Strindberg", 225, "");
+    private static final Book BOOK_3 = new Book("978-3", "Röda rummet", "August Strindberg", 380, "");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final FileService FILE_SERVICE = new FileServiceImpl();
+
+    private Path bookDir;
+    private Path indexPath;
+    private IndexService indexService;
+    private SuggestService suggestService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookDir = Files.createTempDirectory("tempBooks");
+        indexPath = Files.createTempDirectory("tempIndex");
+        indexService = new IndexServiceImpl(indexPath, FILE_SERVICE);
+        writeAsJson(BOOK_0);
+        writeAsJson(BOOK_1);
+        writeAsJson(BOOK_2);
+        indexService.syncDirectory(bookDir);
+        suggestService = new SuggestServiceImpl(indexPath);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IOUtils.close(suggestService, indexService);
+        IOUtils.rm(bookDir, indexPath);
+    }
+
+    @Test
+    void shouldSuggestAuthorsByPrefixOfAnyWord() throws Exception {
+        assertEquals(List.of("Ernest Hemingway"), suggestService.suggestAuthors("hem", 5));
+        assertEquals(List.of("August Strindberg"), suggestService.suggestAuthors("August str", 5));
+        assertEquals(List.of(), suggestService.suggestAuthors("Lagerlöf", 5));
+    }
+
+    @Test
+    void shouldSuggestTitles() throws Exception {
+        assertEquals(List.of("Den gamle och havet"), suggestService.suggestTitles("gaml", 5));
+        assertEquals(List.of("Hemsöborna"), suggestService.suggestTitles("hem", 5));
+        assertEquals(List.of(), suggestService.suggestTitles(" ", 5));
+    }
+
+    @Test
+    void shouldSuggestAuthorsWithMostBooksFirst() throws Exception {
+        // Given
+        writeAsJson(new Book("978-4", "Fru Marianne", "Ernst Ahlgren", 300, ""));
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+        assertEquals(List.of("Ernest Hemingway", "Ernst Ahlgren"), suggestService.suggestAuthors("ern", 5));
+
+        // When
+        writeAsJson(new Book("978-5", "Pengar", "Ernst Ahlgren", 250, ""));
+        writeAsJson(new Book("978-6", "Familjen i Ekeby", "Ernst Ahlgren", 150, ""));
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+
+        // Then
+        assertEquals(List.of("Ernst Ahlgren", "Ernest Hemingway"), suggestService.suggestAuthors("ern", 5));
+        assertEquals(List.of("Ernst Ahlgren"), suggestService.suggestAuthors("ern", 1));
+    }
+
+    @Test
+    void shouldUpdateSuggestionsWhenIndexChanges() throws Exception {
+        // Given
+        assertEquals(List.of(), suggestService.suggestTitles("röda", 5));
+
+        // When
+        writeAsJson(BOOK_3);
+        Files.delete(bookDir.resolve(BOOK_0.isbn() + ".json"));
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+
+        // Then
+        assertEquals(List.of("Röda rummet"), suggestService.suggestTitles("röda", 5));
+        assertEquals(List.of(), suggestService.suggestTitles("gaml", 5));
+        assertEquals(List.of("Ernest Hemingway"), suggestService.suggestAuthors("hem", 5));
+    }
+
+    @Test
+    void shouldNotSuggestDeletedSuggestions() throws Exception {
+        // Given
+        writeAsJson(new Book("978-4", "Fru Marianne", "Ernst Ahlgren", 300, ""));
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+
+        // When
+        Files.delete(bookDir.resolve(BOOK_0.isbn() + ".json"));
+        Files.delete(bookDir.resolve(BOOK_1.isbn() + ".json"));
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+
+        // Then the deleted author does not take the place of the remaining one
+        assertEquals(List.of("Ernst Ahlgren"), suggestService.suggestAuthors("ern", 1));
+        assertEquals(List.of(), suggestService.suggestAuthors("hem", 5));
+
+        // When
+        writeAsJson(BOOK_0);
+        indexService.syncDirectory(bookDir);
+        suggestService.refresh();
+
+        // Then
+        assertEquals(List.of("Ernest Hemingway"), suggestService.suggestAuthors("hem", 5));
+    }
+
+    @Test
+    void shouldKeepWeightsWhenSegmentsAreMerged() throws Exception {
+        // Given one segment for each book
+        for (int i = 4; i <= 6; i++) {
+            writeAsJson(new Book("978-" + i, "Bok " + i, "Ernst Ahlgren", 100, ""));
+            indexService.syncDirectory(bookDir);
+        }
+        suggestService.refresh();
+        assertEquals(List.of("Ernst Ahlgren", "Ernest Hemingway"), suggestService.suggestAuthors("ern", 5));
+
+        // When most segments are merged away, but not all, so that the suggester is updated incrementally
+        indexService.close();
+        try (Directory directory = FSDirectory.open(indexPath);
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            writer.forceMerge(2);
+        }
+        suggestService.refresh();
+
+        // Then
+        assertEquals(List.of("Ernst Ahlgren", "Ernest Hemingway"), suggestService.suggestAuthors("ern", 5));
+        assertEquals(List.of("Hemsöborna"), suggestService.suggestTitles("hem", 5));
+    }
+
+    @Test
+    void shouldNotSuggestAfterClose() throws Exception {
+        // When
+        suggestService.close();
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> suggestService.suggestAuthors("hem", 5));
+    }
+
+    private void writeAsJson(final Book book) throws IOException {
+        OBJECT_MAPPER.writeValue(bookDir.resolve(book.isbn() + ".json").toFile(), book);
+    }
+}